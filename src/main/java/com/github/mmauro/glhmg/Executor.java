@@ -3,19 +3,63 @@ package com.github.mmauro.glhmg;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.github.mmauro.glhmg.datastruct.Corrections;
-import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.Frames;
 import com.github.mmauro.glhmg.datastruct.Locations;
-import com.github.mmauro.glhmg.datastruct.MapParams;
 import com.github.mmauro.glhmg.datastruct.MapSize;
 import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.datastruct.TripStats;
+import com.github.mmauro.glhmg.event.AsyncListener;
+import com.github.mmauro.glhmg.event.EventFormat;
+import com.github.mmauro.glhmg.event.RenderListener;
+import com.github.mmauro.glhmg.filter.FilterChain;
+import com.github.mmauro.glhmg.filter.LocationFilter;
+import com.github.mmauro.glhmg.filter.MaxAccuracyFilter;
+import com.github.mmauro.glhmg.filter.MaxSpeedFilter;
 import com.github.mmauro.glhmg.parse.LocationsParser;
 import com.github.mmauro.glhmg.parse.ParseException;
+import com.github.mmauro.glhmg.pipeline.Pipeline;
+import com.github.mmauro.glhmg.pipeline.PipelineException;
+import com.github.mmauro.glhmg.pipeline.ThreadMode;
+import com.github.mmauro.glhmg.pipeline.VirtualThreads;
+import com.github.mmauro.glhmg.render.CameraPath;
+import com.github.mmauro.glhmg.render.FrameRenderer;
+import com.github.mmauro.glhmg.render.GoogleStaticMapRenderer;
+import com.github.mmauro.glhmg.render.Rendition;
+import com.github.mmauro.glhmg.render.LocalRenderer;
+import com.github.mmauro.glhmg.render.TrailCanvas;
+import com.github.mmauro.glhmg.render.TrailCanvasType;
+import com.github.mmauro.glhmg.render.TrailLayer;
+import com.github.mmauro.glhmg.render.delta.DeltaEncoder;
+import com.github.mmauro.glhmg.render.hud.HudField;
+import com.github.mmauro.glhmg.render.hud.HudOverlay;
+import com.github.mmauro.glhmg.render.output.ImageOutput;
+import com.github.mmauro.glhmg.render.output.FrameNaming;
+import com.github.mmauro.glhmg.render.output.OutputFormat;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import com.github.mmauro.glhmg.render.output.OutputSink;
+import com.github.mmauro.glhmg.render.output.OutputSinkType;
+import com.github.mmauro.glhmg.render.tile.TileCache;
+import com.github.mmauro.glhmg.render.tile.TileCompositor;
+import com.github.mmauro.glhmg.render.tile.TileStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Executor {
 
@@ -37,12 +81,25 @@ public class Executor {
 		}
 	});
 	public final Param<String> googleStaticMapsApiKey = new Param<>(value -> {
-		if (value == null) {
-			throw new IllegalArgumentException("API key cannot be null");
-		} else if (value.trim().isEmpty()) {
+		if (value != null && value.trim().isEmpty()) {
 			throw new IllegalArgumentException("API key cannot be empty");
 		}
 	});
+	public final Param<String> tileUrl = new Param<>(value -> {
+		if (value != null && !(value.contains("{z}") && value.contains("{x}") && value.contains("{y}"))) {
+			throw new IllegalArgumentException("Tile URL must contain the {z}, {x} and {y} placeholders");
+		}
+	});
+	public final Param<File> tileCacheDirectory = new Param<>(dir -> {
+		if (dir != null) {
+			if (dir.exists() && !dir.isDirectory()) {
+				throw new IllegalArgumentException("The given path is not a directory");
+			} else if (!dir.exists() && !dir.mkdirs()) {
+				throw new IllegalArgumentException("Unable to create given directory");
+			}
+		}
+	});
+	public final Param<Integer> tileMemoryCache = new Param<>(Param.nonNegative("TileMemoryCache"));
 	public final Param<Instant> startTime = new Param<>();
 	public final Param<Instant> endTime = new Param<>();
 	public final Param<Duration> interpolation = new Param<>(value -> {
@@ -54,80 +111,450 @@ public class Executor {
 			}
 		}
 	});
-	public final Param<Integer> mapZoom = new Param<>(value -> {
+	public final Param<Double> interpolationPixels = new Param<>(Param.optionalPositive("InterpolationPixels"));
+	public final Param<Duration> interpolationMin = new Param<>(value -> {
+		if (value == null) {
+			throw new IllegalArgumentException("InterpolationMin cannot be null");
+		} else if (value.isNegative() || value.isZero()) {
+			throw new IllegalArgumentException("InterpolationMin must be greater than zero");
+		}
+	});
+	public final Param<Duration> interpolationMax = new Param<>(value -> {
+		if (value == null) {
+			throw new IllegalArgumentException("InterpolationMax cannot be null");
+		} else if (value.isNegative() || value.isZero()) {
+			throw new IllegalArgumentException("InterpolationMax must be greater than zero");
+		}
+	});
+	public final Param<List<Integer>> mapZoom = new Param<>(value -> {
 		if (value == null) {
 			throw new IllegalArgumentException("Zoom cannot be null");
-		} else if (value <= 0) {
-			throw new IllegalArgumentException("Zoom must be greater than zero");
+		} else if (value.isEmpty()) {
+			throw new IllegalArgumentException("Zoom cannot be empty");
+		}
+		for (Integer zoom : value) {
+			if (zoom <= 0) {
+				throw new IllegalArgumentException("Zoom must be greater than zero");
+			}
 		}
 	});
-	public final Param<MapSize> mapSize = new Param<>(value -> {
+	public final Param<List<MapSize>> mapSize = new Param<>(value -> {
 		if (value == null) {
 			throw new IllegalArgumentException("Size cannot be null");
+		} else if (value.isEmpty()) {
+			throw new IllegalArgumentException("Size cannot be empty");
+		}
+	});
+	public final Param<Integer> mapScale = new Param<>(Param.positive("Scale"));
+	public final Param<Color> pathColor = new Param<>(Param.notNull("PathColor"));
+	public final Param<Integer> pathWeight = new Param<>(Param.positive("PathWeight"));
+	public final Param<Integer> threads = new Param<>(Param.positive("Threads"));
+	public final Param<Integer> serverPort = new Param<>(value -> {
+		if (value != null && (value < 0 || value > 65535)) {
+			throw new IllegalArgumentException("Server port must be between 0 and 65535");
 		}
 	});
-	public final Param<Integer> mapScale = new Param<>(value -> {
+	public final Param<Integer> fetchThreads = new Param<>(Param.positive("FetchThreads"));
+	public final Param<OutputFormat> outputFormat = new Param<>(value -> {
 		if (value == null) {
-			throw new IllegalArgumentException("Scale cannot be null");
-		} else if (value <= 0) {
-			throw new IllegalArgumentException("Scale must be greater than zero");
+			throw new IllegalArgumentException("OutputFormat cannot be null");
+		} else if (!value.isAvailable()) {
+			throw new IllegalArgumentException("No encoder available for " + value + ", add an ImageIO plugin for it to the classpath");
 		}
 	});
-	public final Param<Color> pathColor = new Param<>(value -> {
+	public final Param<EventFormat> events = new Param<>(Param.notNull("Events"));
+	public final Param<OutputSinkType> outputSink = new Param<>(Param.notNull("OutputSink"));
+	public final Param<FrameNaming> outputNaming = new Param<>(Param.notNull("OutputNaming"));
+	public final Param<ZoneId> outputTimeZone = new Param<>(Param.notNull("OutputTimeZone"));
+	public final Param<Integer> outputShardSize = new Param<>(Param.nonNegative("OutputShardSize"));
+	public final Param<List<HudField>> hud = new Param<>(Param.notNull("Hud"));
+	public final Param<Integer> deltaKeyframes = new Param<>(Param.nonNegative("DeltaKeyframes"));
+	public final Param<ThreadMode> fetchMode = new Param<>(Param.notNull("FetchMode"));
+	public final Param<Integer> writeThreads = new Param<>(Param.positive("WriteThreads"));
+	public final Param<Integer> queueSize = new Param<>(Param.positive("QueueSize"));
+	public final Param<TrailCanvasType> trailCanvasType = new Param<>(Param.notNull("TrailCanvas"));
+	public Param<Corrections> coordinateCorrections = new Param<>();
+	public final Param<Integer> maxAccuracy = new Param<>(Param.optionalPositive("MaxAccuracy"));
+	public final Param<Double> maxSpeed = new Param<>(Param.optionalPositive("MaxSpeed"));
+	public final Param<Integer> cameraSmoothing = new Param<>(value -> {
 		if (value == null) {
-			throw new IllegalArgumentException("PathColor cannot be null");
+			throw new IllegalArgumentException("CameraSmoothing cannot be null");
+		} else if (value <= 0) {
+			throw new IllegalArgumentException("CameraSmoothing must be greater than zero");
+		} else if (value % 2 == 0) {
+			throw new IllegalArgumentException("CameraSmoothing must be odd");
 		}
 	});
-	public final Param<Integer> pathWeight = new Param<>(value -> {
+	public final Param<Integer> cameraLookAhead = new Param<>(Param.nonNegative("CameraLookAhead"));
+	public final Param<Integer> smoothingWindow = new Param<>(value -> {
 		if (value == null) {
-			throw new IllegalArgumentException("PathWeight cannot be null");
+			throw new IllegalArgumentException("SmoothingWindow cannot be null");
 		} else if (value <= 0) {
-			throw new IllegalArgumentException("PathWeight must be greater than zero");
+			throw new IllegalArgumentException("SmoothingWindow must be greater than zero");
+		} else if (value % 2 == 0) {
+			throw new IllegalArgumentException("SmoothingWindow must be odd");
 		}
 	});
-	public Param<Corrections> coordinateCorrections = new Param<>();
 
 	//@NotNull Location location, int zoom, int sizeWidth, int sizeHeight, int scale, @NotNull Color pathColor, int pathWeight
 
-	public void execute() {
+	/**
+	 * Renders the frames, or starts the server if a port was given, printing the events in the chosen format
+	 *
+	 * @throws RenderException if the run fails. The error is also notified to the listener
+	 */
+	public void execute() throws RenderException {
+		try (final AsyncListener listener = new AsyncListener(events.getValue().create())) {
+			try {
+				final Locations locations = loadLocations(serverPort.isNull(), listener);
+				if (!serverPort.isNull()) {
+					final RenderServer server;
+					try {
+						server = new RenderServer(new Session(this, locations, 1), serverPort.getValue());
+					} catch (IOException e) {
+						throw new RenderException("Unable to start the server: " + e.getMessage(), 4, e);
+					}
+					server.start();
+					Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "glhmg-server-stop"));
+				} else {
+					render(locations, null, listener);
+				}
+			} catch (RenderException e) {
+				listener.onError(e);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Parses the location history and applies the filters
+	 *
+	 * @param timeWindow whether to keep only the locations between start-time and end-time
+	 * @param listener   notified of the progress of the parsing
+	 * @throws RenderException if the history cannot be parsed or no locations are left
+	 */
+	@NotNull
+	Locations loadLocations(boolean timeWindow, @NotNull RenderListener listener) throws RenderException {
 		OutUtils.standard("Parsing location file...");
-		final Locations locations;
+		Locations locations;
 		try {
 			locations = new LocationsParser(new JsonFactory().createParser(locationHistoryJson.getValue())).getLocations(location ->
-					(startTime.isNull() || location.getTimestamp().compareTo(startTime.getValue()) >= 0) && (endTime.isNull() || location.getTimestamp().compareTo(endTime.getValue()) <= 0) && !coordinateCorrections.getValue().has(location.getTimestamp())
+					(!timeWindow || ((startTime.isNull() || location.getTimestamp().compareTo(startTime.getValue()) >= 0) && (endTime.isNull() || location.getTimestamp().compareTo(endTime.getValue()) <= 0))) && !coordinateCorrections.getValue().has(location.getTimestamp()),
+					listener
 			);
 		} catch (ParseException | JsonParseException e) {
-			OutUtils.err("There has been an error parsing the provided JSON file: " + e.getMessage(), 1, e);
-			return;
+			throw new RenderException("There has been an error parsing the provided JSON file: " + e.getMessage(), 1, e);
 		} catch (IOException e) {
-			OutUtils.err("There has been an error reading the provided JSON file: " + e.getMessage(), 2, e);
-			return;
+			throw new RenderException("There has been an error reading the provided JSON file: " + e.getMessage(), 2, e);
 		}
 		if (locations == null) {
-			OutUtils.err("No locations found in given JSON file", 3);
-			return;
+			throw new RenderException("No locations found in given JSON file", 3);
+		}
+		final FilterChain filterChain = getFilterChain();
+		if (!filterChain.isEmpty()) {
+			locations = filterChain.apply(locations);
+			for (Map.Entry<String, Integer> dropped : filterChain.getDropped().entrySet()) {
+				OutUtils.standard("Locations dropped by " + dropped.getKey() + ": " + dropped.getValue());
+			}
+			if (locations == null) {
+				throw new RenderException("No locations left after filtering", 3);
+			}
 		}
 		OutUtils.standard("Locations after filtering: " + locations.size());
-		final Locations withInterpolation;
-		if (interpolation.getValue() == null) {
-			withInterpolation = locations;
-		} else {
+		listener.onLocationsLoaded(locations.size());
+		return locations;
+	}
+
+	/**
+	 * Interpolates the given locations and renders the frames with the current params
+	 *
+	 * @param sharedTileStore the store of the tiles, to share it between more renders, or <code>null</code> to create one if needed
+	 * @param listener        notified of the progress of the frames, from any thread
+	 * @throws RenderException if the params are not valid or the rendering fails
+	 */
+	void render(@NotNull Locations locations, @Nullable TileStore sharedTileStore, @NotNull RenderListener listener) throws RenderException {
+		final Frames withInterpolation;
+		if (!interpolation.isNull() && !interpolationPixels.isNull()) {
+			throw new RenderException("interpolation and interpolation-pixels cannot be used together", Main.ExitCodes.INVALID_PARAM);
+		} else if (interpolationMax.getValue().compareTo(interpolationMin.getValue()) < 0) {
+			throw new RenderException("interpolation-max cannot be less than interpolation-min", Main.ExitCodes.INVALID_PARAM);
+		} else if (!interpolation.isNull()) {
 			withInterpolation = locations.interpolateWithStaticDuration(interpolation.getValue());
 			OutUtils.standard("Locations after interpolation: " + withInterpolation.size());
+		} else if (!interpolationPixels.isNull()) {
+			withInterpolation = locations.interpolateWithPixelDistance(interpolationPixels.getValue(), Collections.max(mapZoom.getValue()), interpolationMin.getValue(), interpolationMax.getValue());
+			OutUtils.standard("Locations after interpolation: " + withInterpolation.size());
+		} else {
+			withInterpolation = locations;
 		}
 
 		final PathParams pathParams = new PathParams(pathColor.getValue(), pathWeight.getValue());
-		System.out.println();
-		int i = 1;
-		for (Location location : withInterpolation) {
-			final MapParams mapParams = new MapParams(location, mapSize.getValue(), mapZoom.getValue(), mapScale.getValue());
-			OutUtils.standard("Downloading image " + i++ + "/" + withInterpolation.size() + "...");
+		final List<Integer> zooms = mapZoom.getValue();
+		final List<MapSize> sizes = mapSize.getValue();
+		if (zooms.size() > 1 && sizes.size() > 1 && zooms.size() != sizes.size()) {
+			throw new RenderException("map-zoom and map-size must have the same number of values, or one of them a single value", Main.ExitCodes.INVALID_PARAM);
+		} else if (deltaKeyframes.getValue() > 0 && (outputFormat.getValue().getType() == OutputFormat.Type.JPEG || outputFormat.getValue().getQuality() >= 0)) {
+			throw new RenderException("delta-keyframes needs a lossless output-format", Main.ExitCodes.INVALID_PARAM);
+		} else if (tileUrl.isNull() && googleStaticMapsApiKey.isNull()) {
+			throw new RenderException("Either api-key or tile-url must be specified", Main.ExitCodes.MISSING_PARAM);
+		}
+		final int renditionCount = Math.max(zooms.size(), sizes.size());
+		final TileStore tileStore = sharedTileStore != null || tileUrl.isNull() ? sharedTileStore : createTileStore();
+		final TileCompositor compositor = tileStore == null ? null : new TileCompositor(tileStore);
+		final List<TrailCanvas> trailCanvases = new ArrayList<>();
+		final List<OutputLayout> layouts = new ArrayList<>(renditionCount);
+		final List<Rendition<?>> renditions = new ArrayList<>(renditionCount);
+		final OutputSink sink;
+		try {
+			sink = outputSink.getValue().create(outputDirectory.getValue());
+		} catch (IOException e) {
+			throw new RenderException("Unable to open the output: " + e.getMessage(), 4, e);
+		}
+		final ImageOutput output = new ImageOutput(outputFormat.getValue(), sink);
+		boolean completed = false;
+		final HudOverlay hudOverlay = hud.getValue().isEmpty() ? null : new HudOverlay(hud.getValue(), locations.getStats(), outputTimeZone.getValue(), mapScale.getValue());
+		try {
+			for (int i = 0; i < renditionCount; i++) {
+				final int zoom = zooms.get(zooms.size() == 1 ? 0 : i);
+				final MapSize size = sizes.get(sizes.size() == 1 ? 0 : i);
+				//With more renditions, each one is written in its own sub-directory
+				final String prefix = renditionCount == 1 ? "" : Rendition.getName(zoom, size) + "/";
+				final File outDir = new File(outputDirectory.getValue(), prefix);
+				if (!outDir.isDirectory() && !outDir.mkdirs()) {
+					throw new RenderException("Unable to create directory " + outDir, 4);
+				}
+				final OutputLayout layout;
+				try {
+					layout = new OutputLayout(sink, prefix, outDir, outputNaming.getValue(), outputTimeZone.getValue(), outputShardSize.getValue(), withInterpolation.size());
+				} catch (IOException e) {
+					throw new RenderException("Unable to create the index of the frames: " + e.getMessage(), 4, e);
+				}
+				layouts.add(layout);
+				final FrameRenderer<?> renderer;
+				if (compositor != null) {
+					final TrailCanvas trailCanvas;
+					try {
+						trailCanvas = trailCanvasType.getValue().create();
+					} catch (IOException e) {
+						throw new RenderException("Unable to create the trail canvas: " + e.getMessage(), 4, e);
+					}
+					trailCanvases.add(trailCanvas);
+					renderer = new LocalRenderer(compositor, new TrailLayer(zoom, pathParams, trailCanvas), layout, output);
+				} else {
+					renderer = new GoogleStaticMapRenderer(googleStaticMapsApiKey.getValue(), layout, output);
+				}
+				final DeltaEncoder deltaEncoder = deltaKeyframes.getValue() > 0 ? new DeltaEncoder(deltaKeyframes.getValue()) : null;
+				renditions.add(new Rendition<>(zoom, size, mapScale.getValue(), renderer, deltaEncoder, hudOverlay, layout, output));
+			}
+
+			OutUtils.standard("");
+			runPipeline(withInterpolation, renditions, pathParams, listener);
+			listener.flush();
+			completed = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RenderException("Interrupted while rendering images", 4, e);
+		} catch (PipelineException e) {
+			throw new RenderException("Error rendering image: " + e.getCause().getMessage(), 4, e.getCause());
+		} finally {
+			for (OutputLayout layout : layouts) {
+				try {
+					layout.close();
+				} catch (IOException e) {
+					OutUtils.warn("Unable to write the index of the frames: " + e.getMessage());
+				}
+			}
+			for (TrailCanvas trailCanvas : trailCanvases) {
+				OutUtils.verbose("Trail tiles allocated: " + trailCanvas.getTileCount());
+				try {
+					trailCanvas.close();
+				} catch (IOException e) {
+					OutUtils.warn("Unable to close the trail canvas: " + e.getMessage());
+				}
+			}
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (completed) {
+					throw new RenderException("Unable to complete the output: " + e.getMessage(), 4, e);
+				}
+				OutUtils.warn("Unable to complete the output: " + e.getMessage());
+			}
+		}
+		if (deltaKeyframes.getValue() > 0) {
+			int keyframes = 0, deltas = 0;
+			for (Rendition<?> rendition : renditions) {
+				keyframes += Objects.requireNonNull(rendition.getDeltaEncoder()).getKeyframes();
+				deltas += rendition.getDeltaEncoder().getDeltas();
+			}
+			OutUtils.standard("Keyframes: " + keyframes + ", deltas: " + deltas);
+		}
+		OutUtils.standard("Images written: " + output.getImages() + ", " + String.format(Locale.ROOT, "%.1f", output.getBytes() / (1024d * 1024d)) + " MB, encoded in " + TimeUnit.NANOSECONDS.toMillis(output.getEncodeNanos()) + " ms");
+		if (tileStore != null) {
+			OutUtils.standard("Tiles downloaded: " + tileStore.getDownloadedCount() + ", decoded: " + tileStore.getDecodedCount());
+		}
+		printSummary(locations.getStats());
+		listener.onRenderCompleted(output.getImages());
+	}
+
+	/**
+	 * Prints the statistics of the whole trip
+	 */
+	private static void printSummary(@NotNull TripStats stats) {
+		final long seconds = stats.getTotalMovingTime().getSeconds();
+		OutUtils.standard(String.format(Locale.ROOT,
+				"Trip: %.2f km, moving for %d:%02d:%02d at %.1f km/h on average, %.0f m of climb",
+				stats.getTotalDistance() / 1000,
+				seconds / 3600, (seconds / 60) % 60, seconds % 60,
+				stats.getAverageMovingSpeed() * 3.6,
+				stats.getTotalAltitudeGain()
+		));
+	}
+
+	/**
+	 * Renders the frames of all the renditions in a pipeline: the frames are prepared, fetched and written by different threads,
+	 * so that the downloads overlap the computation and the encoding.
+	 * Each frame is prepared for all the renditions before the next one, so that sequential renderers receive the frames in order
+	 */
+	private void runPipeline(@NotNull Frames frames, @NotNull List<Rendition<?>> renditions, @NotNull PathParams pathParams, @NotNull RenderListener listener) throws PipelineException, InterruptedException {
+		final int total = frames.size() * renditions.size();
+		listener.onRenderStarted(total);
+		boolean sequential = false;
+		for (Rendition<?> rendition : renditions) {
+			sequential |= rendition.getRenderer().isSequential();
+		}
+		final AtomicInteger done = new AtomicInteger();
+		final Pipeline<Rendition.Job<?>> prepared = Pipeline.<RenditionFrame>from(new RenditionFrameIterator(new CameraPath(frames.iterator(), cameraSmoothing.getValue(), cameraLookAhead.getValue()), renditions), queueSize.getValue())
+				.then("prepare", sequential ? 1 : threads.getValue(), frame -> {
+					listener.onFrameStarted(frame.name);
+					final Rendition.Job<?> job = frame.rendition.prepare(frame.shot.getFrame(), frame.shot.getCenter(), frame.name, pathParams);
+					if (job == null || job.isSkipped()) {
+						listener.onFrameSkipped(frame.name, done.incrementAndGet(), total);
+					}
+					return job;
+				});
+		final Pipeline.Stage<Rendition.Job<?>, Rendition.Job<?>> fetch = job -> {
+			job.fetch();
+			return job;
+		};
+		final Pipeline<Rendition.Job<?>> fetched;
+		if (fetchMode.getValue() == ThreadMode.VIRTUAL && VirtualThreads.isSupported()) {
+			fetched = prepared.thenVirtual("fetch", fetchThreads.getValue(), fetch);
+		} else {
+			if (fetchMode.getValue() == ThreadMode.VIRTUAL) {
+				OutUtils.warn("Virtual threads are not available in this JVM, using " + fetchThreads.getValue() + " platform threads to download");
+			}
+			fetched = prepared.then("fetch", fetchThreads.getValue(), fetch);
+		}
+		final Pipeline<Rendition.Job<?>> overlaid;
+		if (!hud.getValue().isEmpty()) {
+			overlaid = fetched.then("hud", threads.getValue(), job -> {
+				job.drawHud();
+				return job;
+			});
+		} else {
+			overlaid = fetched;
+		}
+		final Pipeline<Rendition.Job<?>> encoded;
+		if (deltaKeyframes.getValue() > 0) {
+			//Deltas need the frames in order, but only their comparison: encoding and writing are still parallel
+			encoded = overlaid.thenOrdered("delta", job -> {
+				job.encodeDelta();
+				return job;
+			});
+		} else {
+			encoded = overlaid;
+		}
+		final Pipeline<Rendition.Job<?>> pipeline = encoded
+				.then("write", writeThreads.getValue(), job -> {
+					if (!job.isSkipped()) {
+						job.write();
+						listener.onFrameCompleted(job.getName(), done.incrementAndGet(), total);
+					}
+					return job;
+				});
+		try {
+			pipeline.run();
+		} finally {
+			for (Pipeline.StageStats stats : pipeline.getStats()) {
+				OutUtils.verbose("Stage " + stats.getName() + " (" + stats.getThreads() + " threads): " + stats.getProcessed() + " frames, " + TimeUnit.NANOSECONDS.toMillis(stats.getBusyNanos()) + " ms busy");
+			}
+		}
+	}
+
+	/**
+	 * A frame to render in a given rendition, with the name of its output file
+	 */
+	private static final class RenditionFrame {
+		@NotNull
+		private final CameraPath.Shot shot;
+		@NotNull
+		private final Rendition<?> rendition;
+		@NotNull
+		private final String name;
+
+		private RenditionFrame(@NotNull CameraPath.Shot shot, @NotNull Rendition<?> rendition, @NotNull String name) {
+			this.shot = shot;
+			this.rendition = rendition;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Iterates each frame once for every rendition, naming them in order with the layout of the rendition
+	 */
+	private static final class RenditionFrameIterator implements Iterator<RenditionFrame> {
+		@NotNull
+		private final Iterator<CameraPath.Shot> frames;
+		@NotNull
+		private final List<Rendition<?>> renditions;
+		private CameraPath.Shot current;
+		private int frame = -1, rendition;
+
+		private RenditionFrameIterator(@NotNull Iterator<CameraPath.Shot> frames, @NotNull List<Rendition<?>> renditions) {
+			this.frames = frames;
+			this.renditions = renditions;
+			this.rendition = renditions.size();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return rendition < renditions.size() || frames.hasNext();
+		}
+
+		@Override
+		public RenditionFrame next() {
+			if (rendition >= renditions.size()) {
+				current = frames.next();
+				frame++;
+				rendition = 0;
+			}
+			final Rendition<?> next = renditions.get(rendition++);
 			try {
-				Utils.downloadImage(googleStaticMapsApiKey.getValue(), outputDirectory.getValue(), mapParams, pathParams);
+				return new RenditionFrame(current, next, next.getLayout().getName(frame, current.getFrame().getTimestamp()));
 			} catch (IOException e) {
-				OutUtils.err("Error downloading image: " + e.getMessage(), 4, e);
-				return;
+				throw new UncheckedIOException(e);
 			}
 		}
 	}
+
+	/**
+	 * @return a new store of the tiles of tile-url
+	 */
+	@NotNull
+	TileStore createTileStore() {
+		return new TileStore(tileUrl.getValue(), tileCacheDirectory.getValue(), new TileCache(tileMemoryCache.getValue() * 1024L * 1024L));
+	}
+
+	@NotNull
+	private FilterChain getFilterChain() {
+		final List<LocationFilter> filters = new ArrayList<>();
+		if (!maxAccuracy.isNull()) {
+			filters.add(new MaxAccuracyFilter(maxAccuracy.getValue()));
+		}
+		if (!maxSpeed.isNull()) {
+			filters.add(new MaxSpeedFilter(maxSpeed.getValue()));
+		}
+		return new FilterChain(filters, smoothingWindow.getValue());
+	}
 }
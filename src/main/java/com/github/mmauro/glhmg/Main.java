@@ -3,6 +3,15 @@ package com.github.mmauro.glhmg;
 import com.github.fcannizzaro.material.Colors;
 import com.github.mmauro.glhmg.datastruct.Corrections;
 import com.github.mmauro.glhmg.datastruct.MapSize;
+import com.github.mmauro.glhmg.event.AsyncListener;
+import com.github.mmauro.glhmg.event.EventFormat;
+import com.github.mmauro.glhmg.pipeline.ThreadMode;
+import com.github.mmauro.glhmg.render.TrailCanvasType;
+import com.github.mmauro.glhmg.render.hud.HudField;
+import com.github.mmauro.glhmg.render.output.FrameNaming;
+import com.github.mmauro.glhmg.render.output.OutputFormat;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import com.github.mmauro.glhmg.render.output.OutputSinkType;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -10,13 +19,20 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionGroup;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.io.File;
+import java.time.DateTimeException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 
@@ -25,11 +41,22 @@ public class Main {
 	@NotNull
 	public static final String DATE_TIME_FORMAT = "an ISO-8601 zoned/offset date time (e.g. 2011-12-03T10:15:30+01:00[Europe/Paris]), an ISO-8608 local date time (e.g. 2011-12-03T10:15:30) or an epoch in milliseconds (e.g. 1322903730000). If you pass a local date time your system timezone will be used";
 
+	/*
+	 * Parsers shared between options. All the options are still created when this class is initialized, since the
+	 * command line needs them: the startup time is cut by the class-data sharing archive of the appcds profile
+	 */
+	private static final Parser<Integer> INTEGER_PARSER = Integer::parseInt;
+	private static final Parser<Double> DOUBLE_PARSER = Double::parseDouble;
+	private static final Parser<Duration> DURATION_PARSER = Duration::parse;
+	private static final Parser<Instant> DATE_TIME_PARSER = Utils::parseDateTime;
+	private static final Parser<File> FILE_PARSER = File::new;
+	private static final Parser<String> STRING_PARSER = str -> str;
+
 	@NotNull
 	public static final Opt<File> OPTION_LOCATION_HISTORY = Opt.<File>builder()
 			.longOpt("location-history")
 			.desc("The JSON file that contains the Google Location History information")
-			.parser(File::new)
+			.parser(FILE_PARSER)
 			.paramProvider(x -> x.locationHistoryJson)
 			.build();
 
@@ -37,24 +64,139 @@ public class Main {
 	public static final Opt<File> OPTION_OUTPUT_DIRECTORY = Opt.<File>builder()
 			.longOpt("output-directory")
 			.desc("The directory that will contain the output files")
-			.parser(File::new)
+			.parser(FILE_PARSER)
 			.paramProvider(x -> x.outputDirectory)
 			.build();
 
+	@NotNull
+	public static final Opt<OutputFormat> OPTION_OUTPUT_FORMAT = Opt.<OutputFormat>builder()
+			.longOpt("output-format")
+			.desc("The format of the images: original (as downloaded, PNG when rendered with tile-url), png (lossless, maximum compression), jpg[:quality] or webp[:quality] (needs an ImageIO WebP plugin, lossless without quality)")
+			.defValue(OutputFormat.ORIGINAL)
+			.parser(OutputFormat::parse)
+			.paramProvider(x -> x.outputFormat)
+			.build();
+
+	@NotNull
+	public static final Opt<List<HudField>> OPTION_HUD = Opt.<List<HudField>>builder()
+			.longOpt("hud")
+			.desc("A comma separated list of the lines of text drawn in the bottom left corner of the frames, chosen between time, speed, distance and climb, or none")
+			.defValue(Collections.emptyList())
+			.parser(str -> str.equalsIgnoreCase("none") ? Collections.emptyList() : parseList(str, HudField::parse))
+			.paramProvider(x -> x.hud)
+			.build();
+
+	@NotNull
+	public static final Opt<EventFormat> OPTION_EVENTS = Opt.<EventFormat>builder()
+			.longOpt("events")
+			.desc("How the progress is printed: text, or ndjson to print one JSON object per line for each event (parse_progress, locations_loaded, render_started, frame_started, frame_completed, frame_skipped, render_completed, error) while the other messages go to the standard error. Progress events are printed at most every " + AsyncListener.DEFAULT_INTERVAL_MILLIS + " ms")
+			.defValue(EventFormat.TEXT)
+			.parser(EventFormat::parse)
+			.paramProvider(x -> x.events)
+			.build();
+
+	@NotNull
+	public static final Opt<OutputSinkType> OPTION_OUTPUT_SINK = Opt.<OutputSinkType>builder()
+			.longOpt("output-sink")
+			.desc("Where the frames are written: directory, tar, zip (stored) or zip-deflated. The archives are streamed as the frames are rendered into frames.tar or frames.zip in the output directory, with a manifest that allows resuming an interrupted run. The entries are in the order the frames complete, which is the order of time with write-threads 1")
+			.defValue(OutputSinkType.DIRECTORY)
+			.parser(OutputSinkType::parse)
+			.paramProvider(x -> x.outputSink)
+			.build();
+
+	@NotNull
+	public static final Opt<FrameNaming> OPTION_OUTPUT_NAMING = Opt.<FrameNaming>builder()
+			.longOpt("output-naming")
+			.desc("How the frames are named: timestamp (e.g. 2017-07-14 03.10.30.000) or sequence (e.g. 000042, with the timestamps in " + OutputLayout.INDEX_FILENAME + ")")
+			.defValue(FrameNaming.TIMESTAMP)
+			.parser(FrameNaming::parse)
+			.paramProvider(x -> x.outputNaming)
+			.build();
+
+	@NotNull
+	public static final Opt<ZoneId> OPTION_OUTPUT_TIME_ZONE = Opt.<ZoneId>builder()
+			.longOpt("output-time-zone")
+			.desc("The time zone of the timestamps in the names of the frames and in the HUD (e.g. Europe/Rome or +02:00)")
+			.defValue(ZoneId.of("UTC"))
+			.parser(str -> {
+				try {
+					return ZoneId.of(str);
+				} catch (DateTimeException e) {
+					throw new IllegalArgumentException(e.getMessage(), e);
+				}
+			})
+			.paramProvider(x -> x.outputTimeZone)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_OUTPUT_SHARD_SIZE = Opt.<Integer>builder()
+			.longOpt("output-shard-size")
+			.desc("Writes the frames in numbered sub-directories of the given number of frames each, so that no directory grows too big. 0 writes all of them in the output directory")
+			.defValue(0)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.outputShardSize)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_DELTA_KEYFRAMES = Opt.<Integer>builder()
+			.longOpt("delta-keyframes")
+			.desc("Writes a full frame every given number of frames, and for the others only the blocks that changed from the previous frame, once moved by the offset between the centers (.delta files, decoded by com.github.mmauro.glhmg.render.delta.DeltaDecoder). 0 writes full frames only. Needs a lossless output-format")
+			.defValue(0)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.deltaKeyframes)
+			.build();
+
 	@NotNull
 	public static final Opt<String> OPTION_API_KEY = Opt.<String>builder()
 			.longOpt("api-key")
-			.desc("The Google Static Map API Key. You can get one from https://developers.google.com/maps/documentation/static-maps/get-api-key")
-			.parser(key -> key)
+			.desc("The Google Static Map API Key. You can get one from https://developers.google.com/maps/documentation/static-maps/get-api-key. Required if tile-url is not specified")
+			.defValue(null)
+			.parser(STRING_PARSER)
 			.paramProvider(x -> x.googleStaticMapsApiKey)
 			.build();
 
+	@NotNull
+	public static final Opt<String> OPTION_TILE_URL = Opt.<String>builder()
+			.longOpt("tile-url")
+			.desc("Renders the maps locally using the slippy map tiles at the given URL, with the {z}, {x} and {y} placeholders (e.g. https://tile.openstreetmap.org/{z}/{x}/{y}.png), instead of using the Google Static Map APIs")
+			.defValue(null)
+			.parser(STRING_PARSER)
+			.paramProvider(x -> x.tileUrl)
+			.build();
+
+	@NotNull
+	public static final Opt<File> OPTION_TILE_CACHE_DIRECTORY = Opt.<File>builder()
+			.longOpt("tile-cache-directory")
+			.desc("The directory where the downloaded tiles are kept, so that they can be reused by other runs")
+			.defValue(null)
+			.parser(FILE_PARSER)
+			.paramProvider(x -> x.tileCacheDirectory)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_TILE_MEMORY_CACHE = Opt.<Integer>builder()
+			.longOpt("tile-memory-cache")
+			.desc("The maximum memory (in MB) used to keep the decoded tiles")
+			.defValue(256)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.tileMemoryCache)
+			.build();
+
+	@NotNull
+	public static final Opt<TrailCanvasType> OPTION_TRAIL_CANVAS = Opt.<TrailCanvasType>builder()
+			.longOpt("trail-canvas")
+			.desc("Where the path drawn by tile-url is kept: HEAP or MAPPED (off-heap in a temporary memory-mapped file, for very long trips at high zoom)")
+			.defValue(TrailCanvasType.HEAP)
+			.parser(TrailCanvasType::parse)
+			.paramProvider(x -> x.trailCanvasType)
+			.build();
+
 	@NotNull
 	public static final Opt<Instant> OPTION_START_TIME = Opt.<Instant>builder()
 			.longOpt("start-time")
 			.desc("The date time from which the software will start to take location data\nFormat: " + DATE_TIME_FORMAT)
 			.defValue(null)
-			.parser(Utils::parseDateTime)
+			.parser(DATE_TIME_PARSER)
 			.paramProvider(x -> x.startTime)
 			.build();
 
@@ -63,7 +205,7 @@ public class Main {
 			.longOpt("end-time")
 			.desc("The date time from which the software will end to take location data\nFormat: " + DATE_TIME_FORMAT)
 			.defValue(null)
-			.parser(Utils::parseDateTime)
+			.parser(DATE_TIME_PARSER)
 			.paramProvider(x -> x.endTime)
 			.build();
 
@@ -72,25 +214,52 @@ public class Main {
 			.longOpt("interpolation")
 			.desc("An interval at which the data will be interpolated. Format: an ISO-8601 duration format: PnDTnHnMn.nS (e.g. PT10S, PT0.750S)")
 			.defValue(null)
-			.parser(Duration::parse)
+			.parser(DURATION_PARSER)
 			.paramProvider(x -> x.interpolation)
 			.build();
 
 	@NotNull
-	public static final Opt<Integer> OPTION_MAP_ZOOM = Opt.<Integer>builder()
+	public static final Opt<Double> OPTION_INTERPOLATION_PIXELS = Opt.<Double>builder()
+			.longOpt("interpolation-pixels")
+			.desc("Interpolates the data placing a location every time the given distance (in pixels at the highest chosen zoom) has been travelled. Cannot be used together with interpolation")
+			.defValue(null)
+			.parser(DOUBLE_PARSER)
+			.paramProvider(x -> x.interpolationPixels)
+			.build();
+
+	@NotNull
+	public static final Opt<Duration> OPTION_INTERPOLATION_MIN = Opt.<Duration>builder()
+			.longOpt("interpolation-min")
+			.desc("The minimum interval between two locations when using interpolation-pixels. Format: an ISO-8601 duration format")
+			.defValue(Duration.ofSeconds(1))
+			.parser(DURATION_PARSER)
+			.paramProvider(x -> x.interpolationMin)
+			.build();
+
+	@NotNull
+	public static final Opt<Duration> OPTION_INTERPOLATION_MAX = Opt.<Duration>builder()
+			.longOpt("interpolation-max")
+			.desc("The maximum interval between two locations when using interpolation-pixels. Format: an ISO-8601 duration format")
+			.defValue(Duration.ofMinutes(10))
+			.parser(DURATION_PARSER)
+			.paramProvider(x -> x.interpolationMax)
+			.build();
+
+	@NotNull
+	public static final Opt<List<Integer>> OPTION_MAP_ZOOM = Opt.<List<Integer>>builder()
 			.longOpt("map-zoom")
-			.desc("The map zoom level. 1=world, 5=continent, 10=city, 15=streets, 20=buildings")
-			.defValue(15)
-			.parser(Integer::parseInt)
+			.desc("The map zoom level. 1=world, 5=continent, 10=city, 15=streets, 20=buildings. A comma separated list renders more renditions in one run, each in its own sub-directory")
+			.defValue(Collections.singletonList(15))
+			.parser(str -> parseList(str, INTEGER_PARSER))
 			.paramProvider(x -> x.mapZoom)
 			.build();
 
 	@NotNull
-	public static final Opt<MapSize> OPTION_MAP_SIZE = Opt.<MapSize>builder()
+	public static final Opt<List<MapSize>> OPTION_MAP_SIZE = Opt.<List<MapSize>>builder()
 			.longOpt("map-size")
-			.desc("The map resolution (in pixels)")
-			.defValue(new MapSize(512, 512))
-			.parser(MapSize::parse)
+			.desc("The map resolution (in pixels). A comma separated list renders more renditions, paired with the zooms of map-zoom")
+			.defValue(Collections.singletonList(new MapSize(512, 512)))
+			.parser(str -> parseList(str, MapSize::parse))
 			.paramProvider(x -> x.mapSize)
 			.build();
 
@@ -99,7 +268,7 @@ public class Main {
 			.longOpt("map-scale")
 			.desc("A multiplier for the map-size value (e.g. a scale of 2 with a map-size of 512x512 will output a 1024x1024 image)")
 			.defValue(1)
-			.parser(Integer::parseInt)
+			.parser(INTEGER_PARSER)
 			.paramProvider(x -> x.mapScale)
 			.build();
 
@@ -117,7 +286,7 @@ public class Main {
 			.longOpt("path-weight")
 			.desc("The thickness of the path")
 			.defValue(5)
-			.parser(Integer::parseInt)
+			.parser(INTEGER_PARSER)
 			.paramProvider(x -> x.pathWeight)
 			.build();
 
@@ -130,22 +299,168 @@ public class Main {
 			.paramProvider(x -> x.coordinateCorrections)
 			.build();
 
+	@NotNull
+	public static final Opt<Integer> OPTION_MAX_ACCURACY = Opt.<Integer>builder()
+			.longOpt("max-accuracy")
+			.desc("Removes the locations with an accuracy radius (in meters) bigger than the given one")
+			.defValue(null)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.maxAccuracy)
+			.build();
+
+	@NotNull
+	public static final Opt<Double> OPTION_MAX_SPEED = Opt.<Double>builder()
+			.longOpt("max-speed")
+			.desc("Removes the locations that would require a speed (in km/h) bigger than the given one to be reached from the previous one, unless the following ones continue from them instead of coming back (useful to remove GPS spikes)")
+			.defValue(null)
+			.parser(DOUBLE_PARSER)
+			.paramProvider(x -> x.maxSpeed)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_SMOOTHING_WINDOW = Opt.<Integer>builder()
+			.longOpt("smoothing-window")
+			.desc("The number of locations (odd) of the window of the median filter applied to the coordinates. 1 disables the smoothing")
+			.defValue(1)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.smoothingWindow)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_CAMERA_SMOOTHING = Opt.<Integer>builder()
+			.longOpt("camera-smoothing")
+			.desc("The number of frames (odd) whose positions are averaged to center each map, so that the camera doesn't follow the GPS noise. 1 centers the map in the frame")
+			.defValue(1)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.cameraSmoothing)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_CAMERA_LOOK_AHEAD = Opt.<Integer>builder()
+			.longOpt("camera-look-ahead")
+			.desc("The number of frames the camera-smoothing window is moved forward, so that the map shows more of where the path is going")
+			.defValue(0)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.cameraLookAhead)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_THREADS = Opt.<Integer>builder()
+			.longOpt("threads")
+			.desc("The number of threads that compute the frames (paths and trail). Ignored by renderers that need the frames in order")
+			.defValue(Runtime.getRuntime().availableProcessors())
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.threads)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_FETCH_THREADS = Opt.<Integer>builder()
+			.longOpt("fetch-threads")
+			.desc("The number of threads that download the maps or the tiles")
+			.defValue(4)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.fetchThreads)
+			.build();
+
+	@NotNull
+	public static final Opt<ThreadMode> OPTION_FETCH_MODE = Opt.<ThreadMode>builder()
+			.longOpt("fetch-mode")
+			.desc("How the downloads are run: PLATFORM (fetch-threads threads) or VIRTUAL (a virtual thread per frame, at most fetch-threads at a time, for many concurrent slow requests). VIRTUAL needs Java 21 or newer, otherwise PLATFORM is used")
+			.defValue(ThreadMode.PLATFORM)
+			.parser(ThreadMode::parse)
+			.paramProvider(x -> x.fetchMode)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_WRITE_THREADS = Opt.<Integer>builder()
+			.longOpt("write-threads")
+			.desc("The number of threads that encode and write the images")
+			.defValue(Runtime.getRuntime().availableProcessors())
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.writeThreads)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_QUEUE_SIZE = Opt.<Integer>builder()
+			.longOpt("queue-size")
+			.desc("The maximum number of frames waiting between two stages. Bounds the memory used when a stage is slower than the previous one")
+			.defValue(32)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.queueSize)
+			.build();
+
+	@NotNull
+	public static final Opt<Integer> OPTION_SERVE = Opt.<Integer>builder()
+			.longOpt("serve")
+			.desc("Instead of rendering, keeps the history in memory and renders the jobs requested over HTTP on the given local port (0 for a free one). The options of the command line are the defaults of the jobs")
+			.defValue(null)
+			.parser(INTEGER_PARSER)
+			.paramProvider(x -> x.serverPort)
+			.build();
+
 	@NotNull
 	private static final Opt<?>[] OPTIONS = new Opt<?>[]{
 			OPTION_LOCATION_HISTORY,
 			OPTION_OUTPUT_DIRECTORY,
+			OPTION_OUTPUT_FORMAT,
+			OPTION_HUD,
+			OPTION_EVENTS,
+			OPTION_OUTPUT_SINK,
+			OPTION_OUTPUT_NAMING,
+			OPTION_OUTPUT_TIME_ZONE,
+			OPTION_OUTPUT_SHARD_SIZE,
+			OPTION_DELTA_KEYFRAMES,
 			OPTION_API_KEY,
+			OPTION_TILE_URL,
+			OPTION_TILE_CACHE_DIRECTORY,
+			OPTION_TILE_MEMORY_CACHE,
+			OPTION_TRAIL_CANVAS,
 			OPTION_START_TIME,
 			OPTION_END_TIME,
 			OPTION_INTERPOLATION,
+			OPTION_INTERPOLATION_PIXELS,
+			OPTION_INTERPOLATION_MIN,
+			OPTION_INTERPOLATION_MAX,
 			OPTION_MAP_ZOOM,
 			OPTION_MAP_SIZE,
 			OPTION_MAP_SCALE,
 			OPTION_PATH_COLOR,
 			OPTION_PATH_WEIGHT,
-			OPTION_COORDINATE_CORRECTIONS
+			OPTION_COORDINATE_CORRECTIONS,
+			OPTION_MAX_ACCURACY,
+			OPTION_MAX_SPEED,
+			OPTION_SMOOTHING_WINDOW,
+			OPTION_CAMERA_SMOOTHING,
+			OPTION_CAMERA_LOOK_AHEAD,
+			OPTION_THREADS,
+			OPTION_FETCH_THREADS,
+			OPTION_FETCH_MODE,
+			OPTION_WRITE_THREADS,
+			OPTION_QUEUE_SIZE,
+			OPTION_SERVE
 	};
 
+	/**
+	 * @return all the options
+	 */
+	@NotNull
+	static List<Opt<?>> getOptionList() {
+		return Arrays.asList(OPTIONS);
+	}
+
+	/**
+	 * @return the option with the given long name, or <code>null</code> if there's none
+	 */
+	@Nullable
+	static Opt<?> getOption(@NotNull String longOpt) {
+		for (Opt<?> opt : OPTIONS) {
+			if (longOpt.equals(opt.getOption().getLongOpt())) {
+				return opt;
+			}
+		}
+		return null;
+	}
+
 	public static class ExitCodes {
 		public static final int ARGS_PARSE_ERROR = 1;
 		public static final int INVALID_PARAM = 2;
@@ -193,7 +508,15 @@ public class Main {
 				main.setOrAsk(opt, executor);
 			}
 
-			executor.execute();
+			if (executor.events.getValue() == EventFormat.NDJSON) {
+				//The standard output is reserved to the events
+				OutUtils.setOut(System.err);
+			}
+			try {
+				executor.execute();
+			} catch (RenderException e) {
+				OutUtils.err(e.getMessage(), e.getExitCode(), e.getCause());
+			}
 		}
 	}
 
@@ -269,12 +592,19 @@ public class Main {
 	}
 
 	@NotNull
-	private static Color parseColor(@NotNull String str) {
-		try {
-			return Colors.valueOf(str.replace('-', '_')).asColor();
-		} catch (IllegalArgumentException ignored) {
+	private static <T> List<T> parseList(@NotNull String str, @NotNull Parser<T> parser) throws ParseException {
+		final String[] split = str.split(",");
+		final List<T> ret = new ArrayList<>(split.length);
+		for (String s : split) {
+			ret.add(parser.parse(s.trim()));
 		}
-		if (str.matches("^#[0-9A-Fa-f]+$")) {
+		return ret;
+	}
+
+	@NotNull
+	private static Color parseColor(@NotNull String str) {
+		//Hex colors are checked first, so that the material colors are only loaded when a name is given
+		if (isHexColor(str)) {
 			final String hex = str.substring(1);
 			final boolean hasAlpha, single;
 
@@ -316,11 +646,29 @@ public class Main {
 				}
 			}
 			return new Color(components[1], components[2], components[3], components[0]);
+		} else if (!str.startsWith("#")) {
+			try {
+				return Colors.valueOf(str.replace('-', '_')).asColor();
+			} catch (IllegalArgumentException ignored) {
+			}
 		}
 
 		throw new IllegalArgumentException("Invalid color: " + str);
 	}
 
+	@Contract(pure = true)
+	private static boolean isHexColor(@NotNull String str) {
+		if (str.length() < 2 || str.charAt(0) != '#') {
+			return false;
+		}
+		for (int i = 1; i < str.length(); i++) {
+			if (Character.digit(str.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@NotNull
 	private static Options getOptions() {
 		final Options options = new Options();
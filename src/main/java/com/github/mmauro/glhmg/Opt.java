@@ -7,7 +7,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.Color;
+import java.util.Collection;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public final class Opt<T> {
 
@@ -77,6 +79,10 @@ public final class Opt<T> {
 			return "no value";
 		} else if (defaultValue.getValue() instanceof Color) {
 			return "#" + Integer.toHexString(((Color) defaultValue.getValue()).getRGB());
+		} else if (defaultValue.getValue() instanceof Collection && ((Collection<?>) defaultValue.getValue()).isEmpty()) {
+			return "none";
+		} else if (defaultValue.getValue() instanceof Collection) {
+			return ((Collection<?>) defaultValue.getValue()).stream().map(String::valueOf).collect(Collectors.joining(","));
 		} else {
 			return defaultValue.getValue().toString();
 		}
@@ -3,6 +3,8 @@ package com.github.mmauro.glhmg;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.PrintStream;
+
 public class OutUtils {
 
 	public enum Verbosity {
@@ -26,14 +28,23 @@ public class OutUtils {
 	}
 
 	private static Verbosity verbosity = Verbosity.STANDARD;
+	@NotNull
+	private static PrintStream out = System.out;
 
 	public static void setVerbosity(Verbosity verbosity) {
 		OutUtils.verbosity = verbosity;
 	}
 
+	/**
+	 * Sets where the messages are printed, e.g. {@link System#err} when {@link System#out} is used for the events
+	 */
+	public static void setOut(@NotNull PrintStream out) {
+		OutUtils.out = out;
+	}
+
 	public static void println(@NotNull Verbosity verbosity, String str) {
 		if (OutUtils.verbosity.canPrint(verbosity)) {
-			System.out.println(str);
+			out.println(str);
 		}
 	}
 
@@ -53,8 +64,11 @@ public class OutUtils {
 		println(Verbosity.STANDARD, "[WARN] " + str);
 	}
 
+	/**
+	 * Prints the error and exits with the given status. Only for the main methods: the rest of the code throws exceptions
+	 */
 	public static void err(String str, int status, @Nullable Throwable throwable) {
-		System.out.println("ERROR: " + str);
+		out.println("ERROR: " + str);
 		if (throwable != null) {
 			throwable.printStackTrace();
 		}
@@ -1,5 +1,7 @@
 package com.github.mmauro.glhmg;
 
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class Param<T> {
@@ -60,4 +62,64 @@ public class Param<T> {
 			return value;
 		}
 	}
+
+	/*
+	 * Common validators, shared by the params of the executor
+	 */
+
+	/**
+	 * @return a validator that rejects {@code null} values
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static <T> Validator<T> notNull(@NotNull String name) {
+		return value -> {
+			if (value == null) {
+				throw new IllegalArgumentException(name + " cannot be null");
+			}
+		};
+	}
+
+	/**
+	 * @return a validator that rejects {@code null} values and numbers not greater than zero
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static <T extends Number> Validator<T> positive(@NotNull String name) {
+		return value -> {
+			if (value == null) {
+				throw new IllegalArgumentException(name + " cannot be null");
+			} else if (value.doubleValue() <= 0) {
+				throw new IllegalArgumentException(name + " must be greater than zero");
+			}
+		};
+	}
+
+	/**
+	 * @return a validator that accepts {@code null} values and rejects numbers not greater than zero
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static <T extends Number> Validator<T> optionalPositive(@NotNull String name) {
+		return value -> {
+			if (value != null && value.doubleValue() <= 0) {
+				throw new IllegalArgumentException(name + " must be greater than zero");
+			}
+		};
+	}
+
+	/**
+	 * @return a validator that rejects {@code null} values and negative numbers
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static <T extends Number> Validator<T> nonNegative(@NotNull String name) {
+		return value -> {
+			if (value == null) {
+				throw new IllegalArgumentException(name + " cannot be null");
+			} else if (value.doubleValue() < 0) {
+				throw new IllegalArgumentException(name + " cannot be negative");
+			}
+		};
+	}
 }
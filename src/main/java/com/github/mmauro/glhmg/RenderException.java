@@ -0,0 +1,28 @@
+package com.github.mmauro.glhmg;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Exception thrown when a render cannot be completed
+ */
+public class RenderException extends Exception {
+
+	private final int exitCode;
+
+	public RenderException(@NotNull String message, int exitCode) {
+		this(message, exitCode, null);
+	}
+
+	public RenderException(@NotNull String message, int exitCode, @Nullable Throwable cause) {
+		super(message, cause);
+		this.exitCode = exitCode;
+	}
+
+	/**
+	 * @return the status with which the program exits because of this exception
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+}
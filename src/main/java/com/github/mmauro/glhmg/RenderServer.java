@@ -0,0 +1,353 @@
+package com.github.mmauro.glhmg;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.mmauro.glhmg.event.RenderListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the jobs requested over a local HTTP/JSON API with a {@link Session}, which keeps the parsed history in memory and shares the tile caches between them.
+ * The jobs are run one at a time, each with the pipeline of a normal run. The API is:
+ * <ul>
+ * <li><code>POST /jobs</code>: queues a job. The body is a JSON object with the options to change, by their long name
+ * (e.g. <code>{"start-time": "2017-07-14T00:00:00Z", "map-zoom": "13,11"}</code>). Returns the id of the job</li>
+ * <li><code>GET /jobs/{id}</code>: the state and progress of the job</li>
+ * <li><code>GET /jobs/{id}/events</code>: streams the progress of the job, a JSON object per line, until it ends. The
+ * last object is repeated when nothing changes for a while, to find out if the client has gone</li>
+ * <li><code>GET /jobs/{id}/images</code>: the paths of the written images</li>
+ * <li><code>GET /jobs/{id}/images/{path}</code>: an image</li>
+ * </ul>
+ */
+class RenderServer {
+
+	private enum State {
+		QUEUED, RUNNING, DONE, FAILED
+	}
+
+	private static final class Job implements RenderListener {
+		private final int id;
+		@NotNull
+		private final File outDir;
+		private State state = State.QUEUED;
+		private int written, total;
+		@Nullable
+		private String error;
+
+		private Job(int id, @NotNull File outDir) {
+			this.id = id;
+			this.outDir = outDir;
+		}
+
+		@Override
+		public void onRenderStarted(int total) {
+			setState(State.RUNNING, null);
+			OutUtils.standard("Running job " + id);
+		}
+
+		@Override
+		public synchronized void onFrameCompleted(@NotNull String name, int done, int total) {
+			setProgress(done, total);
+		}
+
+		@Override
+		public synchronized void onFrameSkipped(@NotNull String name, int done, int total) {
+			setProgress(done, total);
+		}
+
+		/**
+		 * Keeps the most advanced progress, since the frames are notified by more threads
+		 */
+		private synchronized void setProgress(int done, int total) {
+			if (done > written) {
+				this.written = done;
+				this.total = total;
+				notifyAll();
+			}
+		}
+
+		private synchronized void setState(@NotNull State state, @Nullable String error) {
+			this.state = state;
+			this.error = error;
+			notifyAll();
+		}
+
+		private synchronized boolean isFinished() {
+			return state == State.DONE || state == State.FAILED;
+		}
+
+		private synchronized void write(@NotNull JsonGenerator json) throws IOException {
+			json.writeStartObject();
+			json.writeNumberField("id", id);
+			json.writeStringField("state", state.name().toLowerCase());
+			json.writeNumberField("written", written);
+			json.writeNumberField("total", total);
+			if (error != null) {
+				json.writeStringField("error", error);
+			}
+			json.writeEndObject();
+		}
+	}
+
+	private static final JsonFactory JSON = new JsonFactory();
+	/**
+	 * The longest time an event stream stays silent
+	 */
+	private static final long EVENTS_KEEP_ALIVE_MILLIS = 15000;
+
+	@NotNull
+	private final Session session;
+	@NotNull
+	private final HttpServer server;
+	private final Map<Integer, Job> jobs = new ConcurrentHashMap<>();
+	private final AtomicInteger lastId = new AtomicInteger();
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param session the session with the params of the command line, which renders the jobs
+	 * @param port    the port to listen on, on the loopback address. 0 chooses a free one
+	 */
+	RenderServer(@NotNull Session session, int port) throws IOException {
+		this.session = session;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/jobs", exchange -> {
+			try {
+				handle(exchange);
+			} catch (RuntimeException e) {
+				sendError(exchange, 500, e.toString());
+			} finally {
+				exchange.close();
+			}
+		});
+	}
+
+	void start() {
+		server.start();
+		OutUtils.standard("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/jobs");
+	}
+
+	/**
+	 * Ends the event streams, stops accepting requests and jobs, and waits up to a second for the exchanges in progress
+	 */
+	void stop() {
+		stopped = true;
+		for (Job job : jobs.values()) {
+			synchronized (job) {
+				job.notifyAll();
+			}
+		}
+		server.stop(1);
+		session.close();
+	}
+
+	private void handle(@NotNull HttpExchange exchange) throws IOException {
+		final String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/", 4);
+		final String method = exchange.getRequestMethod();
+		if (path.length == 1) {
+			if (method.equals("POST")) {
+				submit(exchange);
+			} else {
+				sendError(exchange, 405, "Use POST to submit a job");
+			}
+			return;
+		}
+		final Job job;
+		try {
+			job = jobs.get(Integer.parseInt(path[1]));
+		} catch (NumberFormatException e) {
+			sendError(exchange, 404, "Invalid job id " + path[1]);
+			return;
+		}
+		if (job == null) {
+			sendError(exchange, 404, "Unknown job " + path[1]);
+		} else if (!method.equals("GET")) {
+			sendError(exchange, 405, "Use GET to query a job");
+		} else if (path.length == 2) {
+			try (final JsonGenerator json = startJson(exchange, 200)) {
+				job.write(json);
+			}
+		} else if (path[2].equals("events")) {
+			streamEvents(exchange, job);
+		} else if (path[2].equals("images") && path.length == 3) {
+			listImages(exchange, job);
+		} else if (path[2].equals("images")) {
+			sendImage(exchange, job, path[3]);
+		} else {
+			sendError(exchange, 404, "Unknown resource " + path[2]);
+		}
+	}
+
+	private void submit(@NotNull HttpExchange exchange) throws IOException {
+		final Session.Job renderJob = session.newJob();
+		try {
+			try (final JsonParser parser = JSON.createParser(exchange.getRequestBody())) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new ParseException("The body must be a JSON object");
+				}
+				String name;
+				while ((name = parser.nextFieldName()) != null) {
+					final JsonToken value = parser.nextToken();
+					if (name.equals("output-directory")) {
+						throw new ParseException("Option " + name + " cannot be changed by a job");
+					} else if (value == null || !value.isScalarValue()) {
+						throw new ParseException("The value of " + name + " must be a string, a number, a boolean or null");
+					}
+					renderJob.option(name, value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+				}
+			}
+		} catch (JsonProcessingException e) {
+			sendError(exchange, 400, "Invalid JSON: " + e.getOriginalMessage());
+			return;
+		} catch (ParseException | IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+
+		final int id = lastId.incrementAndGet();
+		final File outDir = new File(new File(session.get(Main.OPTION_OUTPUT_DIRECTORY), "jobs"), String.valueOf(id));
+		try {
+			renderJob.set(Main.OPTION_OUTPUT_DIRECTORY, outDir);
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 500, e.getMessage());
+			return;
+		}
+		final Job job = new Job(id, outDir);
+		jobs.put(id, job);
+		session.render(renderJob.listener(job)).whenComplete((ignored, e) -> {
+			final State state = e == null ? State.DONE : State.FAILED;
+			job.setState(state, e == null ? null : e instanceof RenderException ? e.getMessage() : e.toString());
+			OutUtils.standard("Job " + job.id + " " + state.name().toLowerCase());
+		});
+		try (final JsonGenerator json = startJson(exchange, 202)) {
+			job.write(json);
+		}
+	}
+
+	/**
+	 * Writes the progress of the job every time it changes, until the job ends or the server is stopped. When nothing
+	 * changes the last progress is written again, so that a client that has gone makes the write fail
+	 */
+	private void streamEvents(@NotNull HttpExchange exchange, @NotNull Job job) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		exchange.sendResponseHeaders(200, 0);
+		try (final OutputStream out = exchange.getResponseBody()) {
+			int lastWritten = -1;
+			State lastState = null;
+			while (!stopped) {
+				final boolean finished;
+				synchronized (job) {
+					final long deadline = System.currentTimeMillis() + EVENTS_KEEP_ALIVE_MILLIS;
+					long remaining = EVENTS_KEEP_ALIVE_MILLIS;
+					while (job.written == lastWritten && job.state == lastState && !stopped && remaining > 0) {
+						job.wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+					lastWritten = job.written;
+					lastState = job.state;
+					finished = job.isFinished();
+				}
+				final JsonGenerator json = JSON.createGenerator(out);
+				job.write(json);
+				json.flush();
+				out.write('\n');
+				out.flush();
+				if (finished) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void listImages(@NotNull HttpExchange exchange, @NotNull Job job) throws IOException {
+		final Path root = job.outDir.toPath();
+		final List<String> images;
+		if (Files.isDirectory(root)) {
+			try (final Stream<Path> files = Files.walk(root)) {
+				images = files.filter(Files::isRegularFile)
+						.map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+						.sorted()
+						.collect(Collectors.toList());
+			}
+		} else {
+			//The job has not started writing yet
+			images = Collections.emptyList();
+		}
+		try (final JsonGenerator json = startJson(exchange, 200)) {
+			json.writeStartArray();
+			for (String image : images) {
+				json.writeString(image);
+			}
+			json.writeEndArray();
+		}
+	}
+
+	private static void sendImage(@NotNull HttpExchange exchange, @NotNull Job job, @NotNull String name) throws IOException {
+		final Path root = job.outDir.toPath().normalize();
+		final Path file = root.resolve(name).normalize();
+		if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+			sendError(exchange, 404, "Unknown image " + name);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", getContentType(file.getFileName().toString()));
+		exchange.sendResponseHeaders(200, Files.size(file));
+		try (final OutputStream out = exchange.getResponseBody()) {
+			Files.copy(file, out);
+		}
+	}
+
+	@NotNull
+	private static String getContentType(@NotNull String filename) {
+		final String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
+		switch (extension) {
+			case "png":
+				return "image/png";
+			case "jpg":
+			case "jpeg":
+				return "image/jpeg";
+			case "webp":
+				return "image/webp";
+			default:
+				return "application/octet-stream";
+		}
+	}
+
+	@NotNull
+	private static JsonGenerator startJson(@NotNull HttpExchange exchange, int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, 0);
+		return JSON.createGenerator(exchange.getResponseBody());
+	}
+
+	private static void sendError(@NotNull HttpExchange exchange, int status, @Nullable String message) throws IOException {
+		try (final JsonGenerator json = startJson(exchange, status)) {
+			json.writeStartObject();
+			json.writeStringField("error", String.valueOf(message));
+			json.writeEndObject();
+		}
+	}
+}
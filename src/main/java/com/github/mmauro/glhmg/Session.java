@@ -0,0 +1,282 @@
+package com.github.mmauro.glhmg;
+
+import com.github.mmauro.glhmg.datastruct.Locations;
+import com.github.mmauro.glhmg.event.RenderListener;
+import com.github.mmauro.glhmg.render.tile.TileStore;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders more jobs in the same JVM, keeping the parsed history, the tile caches and the warm JIT between them, e.g.:
+ * <pre>
+ * try (Session session = Session.builder()
+ *         .set(Main.OPTION_LOCATION_HISTORY, history)
+ *         .set(Main.OPTION_OUTPUT_DIRECTORY, output)
+ *         .option("tile-url", "https://tile.openstreetmap.org/{z}/{x}/{y}.png")
+ *         .build()) {
+ *     session.render(session.newJob().option("start-time", "2017-07-14T00:00:00Z").option("map-zoom", "13")).get();
+ * }
+ * </pre>
+ * The options are the ones of the command line, set by their long name or by their {@link Opt}. Those not set take
+ * their default value, and the jobs start from the options of the session.
+ */
+public final class Session implements Closeable {
+
+	/**
+	 * The options that cannot be changed by a job, since they are used to load the history or are shared by all the jobs
+	 */
+	public static final Set<String> SESSION_OPTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"location-history", "serve", "tile-url", "tile-cache-directory", "tile-memory-cache",
+			"coordinate-corrections", "max-accuracy", "max-speed", "smoothing-window"
+	)));
+
+	public static final class Builder {
+		@NotNull
+		private final Executor executor = new Executor();
+		@NotNull
+		private RenderListener listener = RenderListener.NONE;
+		private int jobThreads = 1;
+
+		private Builder() {
+		}
+
+		/**
+		 * @throws IllegalArgumentException if the value is not valid for the option
+		 */
+		@NotNull
+		public <T> Builder set(@NotNull Opt<T> opt, @Nullable T value) {
+			opt.getParam(executor).setValue(value);
+			return this;
+		}
+
+		/**
+		 * Sets an option by its long name, parsing the value as in the command line
+		 *
+		 * @throws ParseException if the option doesn't exist or the value cannot be parsed
+		 */
+		@NotNull
+		public Builder option(@NotNull String name, @Nullable String value) throws ParseException {
+			setOption(executor, name, value);
+			return this;
+		}
+
+		/**
+		 * @param listener notified while the history is parsed
+		 */
+		@NotNull
+		public Builder listener(@NotNull RenderListener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		/**
+		 * @param jobThreads the number of jobs rendered at the same time. Each one still uses the threads of its options
+		 */
+		@NotNull
+		public Builder jobThreads(int jobThreads) {
+			if (jobThreads <= 0) {
+				throw new IllegalArgumentException("jobThreads must be greater than zero");
+			}
+			this.jobThreads = jobThreads;
+			return this;
+		}
+
+		/**
+		 * Parses and filters the history
+		 *
+		 * @throws RenderException if a required option is missing or the history cannot be loaded
+		 */
+		@NotNull
+		public Session build() throws RenderException {
+			for (Opt<?> opt : Main.getOptionList()) {
+				setDefault(opt, executor);
+			}
+			return new Session(executor, executor.loadLocations(false, listener), jobThreads);
+		}
+
+		private static <T> void setDefault(@NotNull Opt<T> opt, @NotNull Executor executor) throws RenderException {
+			final Param<T> param = opt.getParam(executor);
+			if (!param.hasValue()) {
+				if (!opt.hasDefaultValue()) {
+					throw new RenderException("Missing param " + opt.getOption().getLongOpt(), Main.ExitCodes.MISSING_PARAM);
+				}
+				param.setValue(opt.getDefaultValue().getValue());
+			}
+		}
+	}
+
+	/**
+	 * A render with its own options, which start from the ones of the session
+	 */
+	public static final class Job {
+		@NotNull
+		private final Executor executor;
+		@NotNull
+		private RenderListener listener = RenderListener.NONE;
+
+		private Job(@NotNull Executor base) {
+			executor = new Executor();
+			for (Opt<?> opt : Main.getOptionList()) {
+				copy(opt, base, executor);
+			}
+		}
+
+		/**
+		 * @throws IllegalArgumentException if the option is one of the {@link #SESSION_OPTIONS} or the value is not valid
+		 */
+		@NotNull
+		public <T> Job set(@NotNull Opt<T> opt, @Nullable T value) {
+			if (SESSION_OPTIONS.contains(opt.getOption().getLongOpt())) {
+				throw new IllegalArgumentException("Option " + opt.getOption().getLongOpt() + " cannot be changed by a job");
+			}
+			opt.getParam(executor).setValue(value);
+			return this;
+		}
+
+		/**
+		 * Sets an option by its long name, parsing the value as in the command line
+		 *
+		 * @throws ParseException if the option doesn't exist, is one of the {@link #SESSION_OPTIONS} or the value cannot be parsed
+		 */
+		@NotNull
+		public Job option(@NotNull String name, @Nullable String value) throws ParseException {
+			if (SESSION_OPTIONS.contains(name)) {
+				throw new ParseException("Option " + name + " cannot be changed by a job");
+			}
+			setOption(executor, name, value);
+			return this;
+		}
+
+		/**
+		 * @param listener notified of the progress of the job, from the threads of its pipeline
+		 */
+		@NotNull
+		public Job listener(@NotNull RenderListener listener) {
+			this.listener = listener;
+			return this;
+		}
+	}
+
+	@NotNull
+	private final Executor base;
+	@NotNull
+	private final Locations locations;
+	@Nullable
+	private final TileStore tileStore;
+	@NotNull
+	private final ExecutorService jobExecutor;
+
+	/**
+	 * @param base      the executor with all the options set, used as defaults for the jobs
+	 * @param locations all the locations of the history
+	 */
+	Session(@NotNull Executor base, @NotNull Locations locations, int jobThreads) {
+		this.base = base;
+		this.locations = locations;
+		this.tileStore = base.tileUrl.isNull() ? null : base.createTileStore();
+		final AtomicInteger count = new AtomicInteger();
+		this.jobExecutor = Executors.newFixedThreadPool(jobThreads, r -> new Thread(r, "glhmg-jobs-" + count.getAndIncrement()));
+	}
+
+	@NotNull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return a new job with the options of the session
+	 */
+	@NotNull
+	public Job newJob() {
+		return new Job(base);
+	}
+
+	/**
+	 * @return the value of the given option for the session
+	 */
+	public <T> T get(@NotNull Opt<T> opt) {
+		return opt.getParam(base).getValue();
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public Locations getLocations() {
+		return locations;
+	}
+
+	/**
+	 * Queues the job. Later changes to the job don't affect the queued render
+	 *
+	 * @return a future completed when the job has been rendered, or completed exceptionally with a {@link RenderException}
+	 * or with whatever else was thrown while rendering
+	 */
+	@NotNull
+	public CompletableFuture<Void> render(@NotNull Job job) {
+		final Job copy = new Job(job.executor).listener(job.listener);
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		jobExecutor.execute(() -> {
+			try {
+				final Executor executor = copy.executor;
+				final Locations window = locations.between(executor.startTime.getValue(), executor.endTime.getValue());
+				if (window == null) {
+					throw new RenderException("No locations in the given time range", 3);
+				}
+				executor.render(window, tileStore, copy.listener);
+				future.complete(null);
+			} catch (RenderException e) {
+				copy.listener.onError(e);
+				future.completeExceptionally(e);
+			} catch (Throwable e) {
+				//Completes the future for errors too, otherwise whoever waits for it would wait forever
+				future.completeExceptionally(e);
+				if (e instanceof Error) {
+					throw (Error) e;
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Stops accepting jobs. The queued ones are still rendered
+	 */
+	@Override
+	public void close() {
+		jobExecutor.shutdown();
+	}
+
+	private static void setOption(@NotNull Executor executor, @NotNull String name, @Nullable String value) throws ParseException {
+		final Opt<?> opt = Main.getOption(name);
+		if (opt == null) {
+			throw new ParseException("Unknown option " + name);
+		}
+		try {
+			set(opt, executor, value);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid param " + name + ": " + e.getMessage());
+		}
+	}
+
+	private static <T> void set(@NotNull Opt<T> opt, @NotNull Executor executor, @Nullable String value) throws ParseException {
+		opt.getParam(executor).setValue(value == null ? null : opt.getParser().parse(value));
+	}
+
+	private static <T> void copy(@NotNull Opt<T> opt, @NotNull Executor from, @NotNull Executor to) {
+		final Param<T> param = opt.getParam(from);
+		if (param.hasValue()) {
+			opt.getParam(to).setValue(param.getValue());
+		}
+	}
+}
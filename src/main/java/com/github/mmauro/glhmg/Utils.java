@@ -1,5 +1,6 @@
 package com.github.mmauro.glhmg;
 
+import com.github.mmauro.glhmg.datastruct.LatLng;
 import com.github.mmauro.glhmg.datastruct.MapParams;
 import com.github.mmauro.glhmg.datastruct.PathParams;
 import org.apache.commons.cli.ParseException;
@@ -8,23 +9,18 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.Color;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.file.Files;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoField;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,22 +34,6 @@ public class Utils {
 	 */
 	public static final int EARTH_RADIUS_KM = 6371;
 
-	private static final DateTimeFormatter OUTPUT_FORMATTER = new DateTimeFormatterBuilder()
-			.appendValue(ChronoField.YEAR, 4)
-			.appendLiteral('-')
-			.appendValue(ChronoField.MONTH_OF_YEAR, 2)
-			.appendLiteral('-')
-			.appendValue(ChronoField.DAY_OF_MONTH, 2)
-			.appendLiteral(' ')
-			.appendValue(ChronoField.HOUR_OF_DAY, 2)
-			.appendLiteral('.')
-			.appendValue(ChronoField.MINUTE_OF_HOUR, 2)
-			.appendLiteral('.')
-			.appendValue(ChronoField.SECOND_OF_MINUTE, 2)
-			.appendLiteral('.')
-			.appendValue(ChronoField.MILLI_OF_SECOND, 3)
-			.toFormatter();
-
 	private Utils() {
 	}
 
@@ -86,40 +66,69 @@ public class Utils {
 		return String.format("%02X%02X%02X%02X", color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha());
 	}
 
-	static int i = 0;
-
-	public static void downloadImage(@NotNull String apiKey, @NotNull File outDir, @NotNull MapParams mapParams, @NotNull PathParams pathParams) throws IOException {
-		final String filenameWithoutExtension = mapParams.getLocation().getTimestamp().atOffset(ZoneOffset.UTC).format(OUTPUT_FORMATTER);
-		File[] files = outDir.listFiles((dir, name) -> {
-			int endIndex = name.lastIndexOf('.');
-			return name.substring(0, endIndex < 0 ? name.length() : endIndex).equals(filenameWithoutExtension);
-		});
-		if (files == null || files.length > 0) {
-			OutUtils.warn("File " + filenameWithoutExtension + ".* already exists, skipping");
-			return;
-		}
-
+	/**
+	 * @return the parameters of the Google Static Maps request of the given frame, except for the API key
+	 */
+	@NotNull
+	public static HashMap<String, String> getStaticMapParameters(@NotNull MapParams mapParams, @NotNull PathParams pathParams) {
 		final HashMap<String, String> params = new HashMap<>();
-		params.put("center", mapParams.getLocation().getGoogleApiLatLon());
+		final LatLng center = mapParams.getCenterLatLng();
+		params.put("center", center.getLatitudeStr() + "," + center.getLongitudeStr());
 		params.put("zoom", String.valueOf(mapParams.getZoom()));
 		params.put("scale", String.valueOf(mapParams.getScale()));
 		params.put("size", mapParams.getSize().toString());
 		params.put("path", "color:0x" + colorToRGBAString(pathParams.getPathColor()) + "|weight:" + pathParams.getPathWeight() + "|" + mapParams.getLocation().getGoogleApiPath(mapParams));
+		return params;
+	}
 
-		final HttpURLConnection request = request(apiKey, params);
+	/**
+	 * Executes the request and checks that the response is an image
+	 *
+	 * @return the open connection
+	 * @throws IOException if the request fails or the response is not an image
+	 */
+	@NotNull
+	public static HttpURLConnection requestImage(@NotNull String apiKey, @NotNull HashMap<String, String> parameters) throws IOException {
+		final HttpURLConnection request = request(apiKey, parameters);
 		if (request.getResponseCode() != 200) {
 			throw new IOException(request.getResponseMessage());
 		}
-		String contentType = request.getContentType();
+		getImageExtension(request);
+		return request;
+	}
+
+	/**
+	 * @return the extension of the image returned by the given connection (e.g. <code>png</code>)
+	 * @throws IOException if the content type is not an image
+	 */
+	@NotNull
+	public static String getImageExtension(@NotNull HttpURLConnection connection) throws IOException {
+		String contentType = connection.getContentType();
+		if (contentType == null) {
+			throw new IOException("Missing content type");
+		}
 		final String[] split = contentType.split("\\/");
 		if (split.length != 2) {
 			throw new IOException("Invalid content type: " + contentType);
 		} else if (!split[0].equals("image")) {
 			throw new IOException("Invalid content type: " + contentType);
 		}
-		final File outFile = new File(outDir, filenameWithoutExtension + "." + split[1]);
-		try (final InputStream inputStream = request.getInputStream()) {
-			Files.copy(inputStream, outFile.toPath());
+		return split[1];
+	}
+
+	/**
+	 * Reads all the bytes of the given stream, closing it
+	 */
+	@NotNull
+	public static byte[] readFully(@NotNull InputStream inputStream) throws IOException {
+		try (final InputStream in = inputStream) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
 		}
 	}
 
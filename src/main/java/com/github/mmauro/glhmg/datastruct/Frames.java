@@ -0,0 +1,15 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import org.jetbrains.annotations.Contract;
+
+/**
+ * An ordered sequence of locations, each of which will become a frame
+ */
+public interface Frames extends Iterable<Location> {
+
+	/**
+	 * @return the number of frames
+	 */
+	@Contract(pure = true)
+	int size();
+}
@@ -0,0 +1,162 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import com.github.mmauro.glhmg.Utils;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Projection and distance kernels, both for single points and for arrays of points.
+ * <p>
+ * The array versions work on primitive arrays with per-point values (radians, cosines) computed once, and keep the loops
+ * free of branches and calls where possible so that C2 can unroll and vectorize them. The transcendental functions
+ * can't be vectorized, so they are isolated in their own loops.
+ */
+public final class GeoMath {
+
+	private static final double EARTH_RADIUS_METERS = Utils.EARTH_RADIUS_KM * 1000d;
+	/**
+	 * Largest latitude and longitude difference, in radians, for which the distance is computed with the equirectangular
+	 * approximation instead of the haversine formula. At 0.005 rad (~32km) the relative error is below 1e-5
+	 */
+	private static final double EQUIRECTANGULAR_MAX_DELTA = 0.005;
+	/**
+	 * Limits the latitude to 89.189 degrees. This is about a third of a tile past the edge of the world tile
+	 */
+	private static final double MAX_SIN_LATITUDE = 0.9999;
+
+	private GeoMath() {
+	}
+
+	/**
+	 * @return the x world coordinate of the given longitude
+	 */
+	@Contract(pure = true)
+	public static double toWorldX(double longitude) {
+		return 256 * (0.5 + longitude / 360);
+	}
+
+	/**
+	 * @return the y world coordinate of the given latitude
+	 */
+	@Contract(pure = true)
+	public static double toWorldY(double latitude) {
+		final double siny = Math.min(Math.max(Math.sin(latitude * Math.PI / 180), -MAX_SIN_LATITUDE), MAX_SIN_LATITUDE);
+		return 256 * (0.5 - Math.log((1 + siny) / (1 - siny)) / (4 * Math.PI));
+	}
+
+	/**
+	 * @return the longitude of the given x world coordinate
+	 */
+	@Contract(pure = true)
+	public static double toLongitude(double worldX) {
+		return (worldX / 256 - 0.5) * 360;
+	}
+
+	/**
+	 * @return the latitude of the given y world coordinate, the inverse of {@link #toWorldY(double)}
+	 */
+	@Contract(pure = true)
+	public static double toLatitude(double worldY) {
+		return Math.toDegrees(Math.asin(Math.tanh(2 * Math.PI * (0.5 - worldY / 256))));
+	}
+
+	/**
+	 * Projects the first <code>length</code> longitudes to x world coordinates. <code>out</code> can be the same array as <code>longitudes</code>
+	 */
+	public static void toWorldX(@NotNull double[] longitudes, @NotNull double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = 256 * (0.5 + longitudes[i] / 360);
+		}
+	}
+
+	/**
+	 * Projects the first <code>length</code> latitudes to y world coordinates. <code>out</code> can be the same array as <code>latitudes</code>
+	 */
+	public static void toWorldY(@NotNull double[] latitudes, @NotNull double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.sin(latitudes[i] * Math.PI / 180);
+		}
+		for (int i = 0; i < length; i++) {
+			final double siny = Math.min(Math.max(out[i], -MAX_SIN_LATITUDE), MAX_SIN_LATITUDE);
+			out[i] = (1 + siny) / (1 - siny);
+		}
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.log(out[i]);
+		}
+		for (int i = 0; i < length; i++) {
+			out[i] = 256 * (0.5 - out[i] / (4 * Math.PI));
+		}
+	}
+
+	/**
+	 * Converts the first <code>length</code> values from degrees to radians. <code>out</code> can be the same array as <code>degrees</code>
+	 */
+	public static void toRadians(@NotNull double[] degrees, @NotNull double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = degrees[i] * (Math.PI / 180);
+		}
+	}
+
+	/**
+	 * Computes the cosine of the first <code>length</code> values. <code>out</code> can be the same array as <code>radians</code>
+	 */
+	public static void cos(@NotNull double[] radians, @NotNull double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.cos(radians[i]);
+		}
+	}
+
+	/**
+	 * @return the distance, in meters, between the two points, given in degrees
+	 */
+	@Contract(pure = true)
+	public static double getMetersDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+		final double lat1 = Math.toRadians(latitude1), lat2 = Math.toRadians(latitude2);
+		return getMetersDistance(lat1, Math.toRadians(longitude1), Math.cos(lat1), lat2, Math.toRadians(longitude2), Math.cos(lat2));
+	}
+
+	/**
+	 * @return the distance, in meters, between the two points, given in radians with the cosine of their latitude
+	 */
+	@Contract(pure = true)
+	public static double getMetersDistance(double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+		final double dLat = lat2 - lat1, dLon = lon2 - lon1;
+		if (Math.abs(dLat) <= EQUIRECTANGULAR_MAX_DELTA && Math.abs(dLon) <= EQUIRECTANGULAR_MAX_DELTA) {
+			final double x = dLon * (cosLat1 + cosLat2) * 0.5;
+			return EARTH_RADIUS_METERS * Math.sqrt(dLat * dLat + x * x);
+		} else {
+			return haversine(dLat, dLon, cosLat1, cosLat2);
+		}
+	}
+
+	/**
+	 * Computes the distance, in meters, of each point from the previous one. The first point has a distance of zero.
+	 * The coordinates are in radians, and <code>cosLat</code> contains the cosine of each latitude.
+	 */
+	public static void getSegmentMeters(@NotNull double[] lat, @NotNull double[] lon, @NotNull double[] cosLat, @NotNull double[] out, int length) {
+		if (length <= 0) {
+			return;
+		}
+		out[0] = 0;
+		//Equirectangular approximation for every segment: only arithmetic and sqrt, so it vectorizes
+		for (int i = 1; i < length; i++) {
+			final double dLat = lat[i] - lat[i - 1];
+			final double x = (lon[i] - lon[i - 1]) * (cosLat[i] + cosLat[i - 1]) * 0.5;
+			out[i] = EARTH_RADIUS_METERS * Math.sqrt(dLat * dLat + x * x);
+		}
+		//The rare long segments are computed again with the haversine formula
+		for (int i = 1; i < length; i++) {
+			final double dLat = lat[i] - lat[i - 1], dLon = lon[i] - lon[i - 1];
+			if (Math.abs(dLat) > EQUIRECTANGULAR_MAX_DELTA || Math.abs(dLon) > EQUIRECTANGULAR_MAX_DELTA) {
+				out[i] = haversine(dLat, dLon, cosLat[i - 1], cosLat[i]);
+			}
+		}
+	}
+
+	@Contract(pure = true)
+	private static double haversine(double dLat, double dLon, double cosLat1, double cosLat2) {
+		final double sinLat = Math.sin(dLat / 2), sinLon = Math.sin(dLon / 2);
+		final double a = sinLat * sinLat + cosLat1 * cosLat2 * sinLon * sinLon;
+		return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+}
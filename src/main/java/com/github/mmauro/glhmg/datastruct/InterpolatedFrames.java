@@ -0,0 +1,68 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link Frames} interpolated lazily from a {@link Locations}: frames are created only when requested by the iterator, so
+ * the memory used doesn't depend on the number of frames.
+ * The first frame is always the first location, and each subsequent one has a timestamp decided by {@link #getNextTimestamp(Location, Location)}.
+ *
+ * @see Location#interpolateFrame(Location, Instant)
+ */
+public abstract class InterpolatedFrames implements Frames {
+
+	@NotNull
+	protected final Locations locations;
+
+	protected InterpolatedFrames(@NotNull Locations locations) {
+		this.locations = locations;
+	}
+
+	/**
+	 * @param segmentStart the location of the original path that precedes (or is equal to) <code>lastFrame</code>
+	 * @param lastFrame    the last returned frame
+	 * @return the timestamp of the next frame. Must be after the one of <code>lastFrame</code>
+	 */
+	@NotNull
+	protected abstract Instant getNextTimestamp(@NotNull Location segmentStart, @NotNull Location lastFrame);
+
+	@NotNull
+	@Override
+	public Iterator<Location> iterator() {
+		return new Iterator<Location>() {
+
+			private Location segmentStart = locations.getFirst();
+			private Location next = segmentStart;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Location next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				final Location ret = next;
+				next = computeNext(ret);
+				return ret;
+			}
+
+			private Location computeNext(@NotNull Location lastFrame) {
+				if (!segmentStart.hasNext()) {
+					return null;
+				}
+				final Instant timestamp = getNextTimestamp(segmentStart, lastFrame);
+				while (segmentStart.hasNext() && !timestamp.isBefore(segmentStart.getNext().getTimestamp())) {
+					segmentStart = segmentStart.getNext();
+				}
+				return segmentStart.hasNext() ? Location.interpolateFrame(segmentStart, timestamp) : null;
+			}
+		};
+	}
+}
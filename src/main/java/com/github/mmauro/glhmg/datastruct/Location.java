@@ -7,16 +7,29 @@ import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Mauro on 28/08/2017.
  */
 public final class Location implements Comparable<Location> {
 
+	/**
+	 * Buffers reused by {@link #getGoogleApiPath(MapParams, int)}, one per thread since frames can be computed in parallel
+	 */
+	private static final ThreadLocal<List<Location>> PATH_BUFFER = ThreadLocal.withInitial(ArrayList::new);
+	private static final ThreadLocal<StringBuilder> PATH_STRING_BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
 	@Nullable
 	private Location previous, next;
+	/**
+	 * The {@link Locations} that contains this location and the position in it, assigned when the list is created.
+	 * They allow constant time lookups, and are cleared as soon as the links change
+	 */
+	@Nullable
+	private Locations owner;
+	private int position;
 	@NotNull
 	private final Instant timestamp;
 	@NotNull
@@ -95,6 +108,22 @@ public final class Location implements Comparable<Location> {
 		return heading;
 	}
 
+	/**
+	 * @return the x world coordinate. Read from the precomputed projection if this location is part of a {@link Locations}
+	 */
+	@Contract(pure = true)
+	public double getWorldX() {
+		return owner == null ? GeoMath.toWorldX(latLng.getLongitude()) : owner.getWorldX(position);
+	}
+
+	/**
+	 * @return the y world coordinate. Read from the precomputed projection if this location is part of a {@link Locations}
+	 */
+	@Contract(pure = true)
+	public double getWorldY() {
+		return owner == null ? GeoMath.toWorldY(latLng.getLatitude()) : owner.getWorldY(position);
+	}
+
 	@NotNull
 	public String getGoogleApiLatLon() {
 		return latLng.getLatitudeStr() + "," + latLng.getLongitudeStr();
@@ -102,10 +131,28 @@ public final class Location implements Comparable<Location> {
 
 	public void setPrevious(@Nullable Location previous) {
 		this.previous = previous;
+		this.owner = null;
 	}
 
 	public void setNext(@Nullable Location next) {
 		this.next = next;
+		this.owner = null;
+	}
+
+	/**
+	 * Called by {@link Locations} once the whole list has been linked
+	 */
+	void setPosition(@NotNull Locations owner, int position) {
+		this.owner = owner;
+		this.position = position;
+	}
+
+	/**
+	 * @return the position of this location in the given list, or <code>-1</code> if it's not part of it
+	 */
+	@Contract(pure = true)
+	int getPosition(@NotNull Locations owner) {
+		return this.owner == owner ? position : -1;
 	}
 
 	@Contract(pure = true)
@@ -122,19 +169,40 @@ public final class Location implements Comparable<Location> {
 		return new Location(timestamp, latLng, accuracy, altitude, heading);
 	}
 
+	/**
+	 * @return a new orphan location where all its values are copied, except for the coordinates, which are replaced by the given ones
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public Location withLatLng(@NotNull LatLng latLng) {
+		return new Location(timestamp, latLng, accuracy, altitude, heading);
+	}
+
 	public boolean isVisible(@NotNull MapParams mapParams) {
 		return isVisible(mapParams, 1.01f);
 	}
 
 	public boolean isVisible(@NotNull MapParams mapParams, float tollerance) {
+		return isInBounds(getVisibleBounds(mapParams, tollerance));
+	}
+
+	/**
+	 * @return the world coordinates visible in the given map, as <code>{minX, minY, maxX, maxY}</code>
+	 */
+	@NotNull
+	@Contract(pure = true)
+	private static double[] getVisibleBounds(@NotNull MapParams mapParams, float tollerance) {
 		final double scale = Math.pow(2, mapParams.getZoom());
 		final MapSize mapSize = mapParams.getSize();
+		final double centerX = mapParams.getCenterX(), centerY = mapParams.getCenterY();
+		final double halfWidth = ((mapSize.width / 2d) / scale) * tollerance, halfHeight = ((mapSize.height / 2d) / scale) * tollerance;
+		return new double[]{centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight};
+	}
 
-		final WorldCoordinate centerPx = mapParams.getLocation().getLatLng().toWorldCoordinate();
-		final WorldCoordinate nePoint = new WorldCoordinate(centerPx.getX() + ((mapSize.width / 2d) / scale) * tollerance, centerPx.getY() - ((mapSize.height / 2d) / scale) * tollerance);
-		final WorldCoordinate swPoint = new WorldCoordinate(centerPx.getX() - ((mapSize.width / 2d) / scale) * tollerance, centerPx.getY() + ((mapSize.height / 2d) / scale) * tollerance);
-
-		return latLng.toWorldCoordinate().isInBounds(nePoint, swPoint);
+	@Contract(pure = true)
+	private boolean isInBounds(@NotNull double[] bounds) {
+		final double x = getWorldX(), y = getWorldY();
+		return x >= bounds[0] && x <= bounds[2] && y >= bounds[1] && y <= bounds[3];
 	}
 
 	@NotNull
@@ -160,26 +228,34 @@ public final class Location implements Comparable<Location> {
 		return timestamp.compareTo(o.timestamp);
 	}
 
+	/**
+	 * @return the first location of the list. Constant time if this location, or its previous, is part of a {@link Locations}
+	 */
 	@Contract(pure = true)
 	@NotNull
 	public Location getRoot() {
-		if (previous == null) {
-			return this;
-		} else {
-			return previous.getRoot();
+		Location location = this;
+		while (location.owner == null && location.previous != null) {
+			location = location.previous;
 		}
+		return location.owner == null ? location : location.owner.getFirst();
 	}
 
+	/**
+	 * @return the location that comes the given number of steps before this one, or the root if there are not enough
+	 */
 	@Contract(pure = true)
 	@NotNull
 	public Location getPrevious(int steps) {
 		if (steps < 0) {
 			throw new IllegalArgumentException("steps < 0");
-		} else if (steps == 0 || previous == null) {
-			return this;
-		} else {
-			return previous.getPrevious(steps - 1);
 		}
+		Location location = this;
+		while (steps > 0 && location.owner == null && location.previous != null) {
+			location = location.previous;
+			steps--;
+		}
+		return location.owner == null ? location : location.owner.get(Math.max(0, location.position - steps));
 	}
 
 	/**
@@ -195,17 +271,21 @@ public final class Location implements Comparable<Location> {
 		if (previous == null) {
 			return getGoogleApiLatLon();
 		} else {
-			final TreeSet<Location> arr = new TreeSet<>();
+			final List<Location> arr = PATH_BUFFER.get();
+			arr.clear();
+			//The bounds are computed once, while the points read their precomputed projection
+			final double[] bounds = getVisibleBounds(mapParams, 1.01f);
 			Location loc = getRoot();
-			while (loc != previous && !loc.isVisible(mapParams)) {
+			while (loc != previous && !loc.isInBounds(bounds)) {
 				loc = loc.getNext();
 			}
 
-			//This while adds only visible points and entry and exit points to shadow zones
+			//This while adds only visible points and entry and exit points to shadow zones.
+			//It stops by timestamp since interpolated frames are not linked as the next of their previous
 			boolean lastVisible = true, precAdded = true;
 			Location prec = null;
-			while (loc != this) {
-				final boolean currentVisible = loc.isVisible(mapParams);
+			while (loc != this && loc.compareTo(this) < 0) {
+				final boolean currentVisible = loc.isInBounds(bounds);
 				if (currentVisible && !precAdded) {
 					arr.add(prec);
 				}
@@ -222,7 +302,8 @@ public final class Location implements Comparable<Location> {
 			}
 			arr.add(this);
 
-			final StringBuilder sb = new StringBuilder();
+			final StringBuilder sb = PATH_STRING_BUFFER.get();
+			sb.setLength(0);
 			boolean first = true;
 			for (Location l : Location.interpolateLocations(arr, limit)) {
 				if (first) {
@@ -232,6 +313,7 @@ public final class Location implements Comparable<Location> {
 				}
 				sb.append(l.getGoogleApiLatLon());
 			}
+			arr.clear();
 			return sb.toString();
 		}
 	}
@@ -285,7 +367,7 @@ public final class Location implements Comparable<Location> {
 	@Contract(pure = true)
 	@Nullable
 	public Location optNext() {
-		return previous;
+		return next;
 	}
 
 	@Contract(pure = true)
@@ -306,32 +388,62 @@ public final class Location implements Comparable<Location> {
 		} else if (timestamp.compareTo(b.timestamp) > 0) {
 			throw new IllegalArgumentException("timestamp is not before b");
 		}
-		return interpolate(a, b, Duration.between(a.timestamp, timestamp).toNanos() / (float) Duration.between(a.timestamp, b.timestamp).toNanos());
+		final float balancing = Duration.between(a.timestamp, timestamp).toNanos() / (float) Duration.between(a.timestamp, b.timestamp).toNanos();
+		final Location interpolated = interpolate(a, b, balancing);
+		//The float balancing loses precision on long segments: keeps exactly the requested timestamp
+		if (interpolated.timestamp.equals(timestamp)) {
+			return interpolated;
+		} else {
+			return new Location(timestamp, interpolated.latLng, interpolated.accuracy, interpolated.altitude, interpolated.heading);
+		}
+	}
+
+	/**
+	 * Creates a frame at the given timestamp along the segment that starts at <code>segmentStart</code>.
+	 * The returned location has <code>segmentStart</code> as its previous, but it is not linked as its next, so that the original path is left untouched.
+	 *
+	 * @param segmentStart the location that starts the segment. Must have a next
+	 * @param timestamp    the desired timestamp. Must not be before segmentStart.timestamp and must be before segmentStart.next.timestamp
+	 * @return <code>segmentStart</code> itself if the timestamps are equal, a new location otherwise
+	 */
+	@NotNull
+	public static Location interpolateFrame(@NotNull Location segmentStart, @NotNull Instant timestamp) {
+		if (timestamp.equals(segmentStart.timestamp)) {
+			return segmentStart;
+		}
+		final Location frame = interpolateWithTimestamp(segmentStart, segmentStart.getNext(), timestamp);
+		frame.setPrevious(segmentStart);
+		return frame;
 	}
 
+	/**
+	 * Resamples the given locations so that they are at most <code>limit + 1</code>, keeping the first and the last one
+	 *
+	 * @param locations the locations, ordered by time
+	 * @return <code>locations</code> itself if it doesn't exceed the limit, a new list otherwise
+	 */
 	@NotNull
-	public static TreeSet<Location> interpolateLocations(@NotNull TreeSet<Location> locations, int limit) {
+	public static List<Location> interpolateLocations(@NotNull List<Location> locations, int limit) {
 		if (locations.size() < 2 || locations.size() <= limit) {
 			return locations;
-		} else {
-			final Duration span = Duration.between(locations.first().timestamp, locations.last().timestamp).dividedBy(limit);
-
-			final TreeSet<Location> ret = new TreeSet<>();
-			Iterator<Location> it = locations.iterator();
-			Location loc = it.next();
-			Location next = it.next();
-			Instant timestamp = loc.timestamp.plus(span);
-			ret.add(loc);
-			while (it.hasNext()) {
-				while (it.hasNext() && !next.timestamp.isAfter(timestamp)) {
-					loc = next;
-					next = it.next();
-				}
-				ret.add(Location.interpolateWithTimestamp(loc, next, timestamp));
-				timestamp = timestamp.plus(span);
+		}
+		final Location first = locations.get(0), last = locations.get(locations.size() - 1);
+		final Duration span = Duration.between(first.timestamp, last.timestamp).dividedBy(limit);
+		if (span.isZero()) {
+			return locations;
+		}
+
+		final List<Location> ret = new ArrayList<>(limit + 1);
+		ret.add(first);
+		int i = 0;
+		for (Instant timestamp = first.timestamp.plus(span); timestamp.isBefore(last.timestamp); timestamp = timestamp.plus(span)) {
+			while (!locations.get(i + 1).timestamp.isAfter(timestamp)) {
+				i++;
 			}
-			return ret;
+			ret.add(Location.interpolateWithTimestamp(locations.get(i), locations.get(i + 1), timestamp));
 		}
+		ret.add(last);
+		return ret;
 	}
 
 	/**
@@ -387,6 +499,9 @@ public final class Location implements Comparable<Location> {
 	 */
 	@Contract(pure = true)
 	public int size() {
+		if (owner != null) {
+			return owner.size() - position;
+		}
 		Location location = next;
 		int size = 1;
 		while (location != null) {
@@ -398,12 +513,14 @@ public final class Location implements Comparable<Location> {
 
 
 	/**
-	 * Class that helps building a location
+	 * Class that helps building a location. An instance can be reused for multiple locations by calling {@link #reset()}
 	 */
 	public static class Builder {
 		private Instant timestamp;
-		private Double latitude, longitude;
-		private Integer accuracy, altitude, heading;
+		private double latitude, longitude;
+		private boolean hasLatitude, hasLongitude, hasAccuracy;
+		private int accuracy;
+		private Integer altitude, heading;
 
 		public void setTimestamp(Instant timestamp) {
 			this.timestamp = timestamp;
@@ -411,14 +528,17 @@ public final class Location implements Comparable<Location> {
 
 		public void setLatitude(double latitude) {
 			this.latitude = latitude;
+			this.hasLatitude = true;
 		}
 
 		public void setLongitude(double longitude) {
 			this.longitude = longitude;
+			this.hasLongitude = true;
 		}
 
-		public void setAccuracy(Integer accuracy) {
+		public void setAccuracy(int accuracy) {
 			this.accuracy = accuracy;
+			this.hasAccuracy = true;
 		}
 
 		public void setAltitude(Integer altitude) {
@@ -429,11 +549,23 @@ public final class Location implements Comparable<Location> {
 			this.heading = heading;
 		}
 
+		/**
+		 * Clears all the attributes, so that the builder can be used for a new location
+		 */
+		public void reset() {
+			timestamp = null;
+			hasLatitude = false;
+			hasLongitude = false;
+			hasAccuracy = false;
+			altitude = null;
+			heading = null;
+		}
+
 		/**
 		 * @return <code>true</code> if all the attributes necessary to construct the {@link Location} have been set
 		 */
 		public boolean isBuildable() {
-			return timestamp != null && latitude != null && longitude != null && accuracy != null;
+			return timestamp != null && hasLatitude && hasLongitude && hasAccuracy;
 		}
 
 		/**
@@ -445,11 +577,11 @@ public final class Location implements Comparable<Location> {
 		public Location build() {
 			if (timestamp == null) {
 				throw new IllegalStateException("timestamp not specified");
-			} else if (latitude == null) {
+			} else if (!hasLatitude) {
 				throw new IllegalStateException("latitude not specified");
-			} else if (longitude == null) {
+			} else if (!hasLongitude) {
 				throw new IllegalStateException("longitude not specified");
-			} else if (accuracy == null) {
+			} else if (!hasAccuracy) {
 				throw new IllegalStateException("accuracy not specified");
 			} else {
 				return new Location(timestamp, new LatLng(latitude, longitude), accuracy, altitude, heading);
@@ -2,82 +2,216 @@ package com.github.mmauro.glhmg.datastruct;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-public final class Locations implements Iterable<Location> {
+public final class Locations implements Frames {
 
-	private final Location firstLocation;
-	private final int size;
+	/**
+	 * The locations in order, each one knowing its position, for constant time random access
+	 */
+	@NotNull
+	private final Location[] locations;
+	/**
+	 * The world coordinates of the locations, projected once when the list is created
+	 */
+	@NotNull
+	private final double[] worldX, worldY;
+	/**
+	 * Computed on the first request
+	 */
+	private TripStats stats;
 
 	/**
-	 * Constructs a new instance
+	 * Constructs a new instance. The list must be completely linked, since the positions are assigned now
 	 *
 	 * @param firstLocation the first location
 	 */
 	public Locations(@NotNull Location firstLocation) {
-		this.firstLocation = firstLocation;
-		this.size = firstLocation.size();
+		int size = 1;
+		for (Location location = firstLocation; location.hasNext(); location = location.getNext()) {
+			size++;
+		}
+		this.locations = new Location[size];
+		Location location = firstLocation;
+		for (int i = 0; i < size; i++) {
+			locations[i] = location;
+			location.setPosition(this, i);
+			location = location.optNext();
+		}
+
+		this.worldX = new double[size];
+		this.worldY = new double[size];
+		for (int i = 0; i < size; i++) {
+			worldX[i] = locations[i].getLatLng().getLongitude();
+			worldY[i] = locations[i].getLatLng().getLatitude();
+		}
+		GeoMath.toWorldX(worldX, worldX, size);
+		GeoMath.toWorldY(worldY, worldY, size);
+	}
+
+	/**
+	 * @return the first location
+	 */
+	@Contract(pure = true)
+	@NotNull
+	public Location getFirst() {
+		return locations[0];
+	}
+
+	/**
+	 * @return the last location
+	 */
+	@Contract(pure = true)
+	@NotNull
+	public Location getLast() {
+		return locations[locations.length - 1];
 	}
 
 	/**
 	 * @return the number of locations
 	 */
 	@Contract(pure = true)
+	@Override
 	public int size() {
-		return size;
+		return locations.length;
 	}
 
 	/**
-	 * Returns a new collection where the first location is the same, and than each subsequent one is always exactly after the specified duration
-	 *
-	 * @param duration the duration
-	 * @return a new {@link Locations}
+	 * @return the location at the given position
+	 * @throws IndexOutOfBoundsException if the position is not valid
+	 */
+	@Contract(pure = true)
+	@NotNull
+	public Location get(int position) {
+		if (position < 0 || position >= locations.length) {
+			throw new IndexOutOfBoundsException("position: " + position + ", size: " + locations.length);
+		}
+		return locations[position];
+	}
+
+	/**
+	 * @return the statistics of the trip, computed on the first call
 	 */
 	@NotNull
-	public Locations interpolateWithStaticDuration(@NotNull Duration duration) {
-		final Location first = firstLocation.asOrphan();
+	public synchronized TripStats getStats() {
+		if (stats == null) {
+			stats = new TripStats(this);
+		}
+		return stats;
+	}
 
-		Location current = firstLocation;
-		Instant newTimestamp = current.getTimestamp();
-		Location currentNew = first;
-		while (current.hasNext()) {
-			newTimestamp = newTimestamp.plus(duration);
+	/**
+	 * @return the x world coordinate of the location at the given position
+	 */
+	@Contract(pure = true)
+	public double getWorldX(int position) {
+		return worldX[position];
+	}
 
-			while (current.hasNext() && !newTimestamp.isBefore(current.getNext().getTimestamp())) {
-				current = current.getNext();
-			}
+	/**
+	 * @return the y world coordinate of the location at the given position
+	 */
+	@Contract(pure = true)
+	public double getWorldY(int position) {
+		return worldY[position];
+	}
 
-			if (current.hasNext()) {
-				final Location interpolated = Location.interpolateWithTimestamp(currentNew, current.getNext(), newTimestamp);
-				currentNew.setNext(interpolated);
-				interpolated.setPrevious(currentNew);
-				currentNew = interpolated;
+	/**
+	 * @return the position of the first location not before the given timestamp, found with a binary search
+	 */
+	private int indexOf(@NotNull Instant timestamp) {
+		int low = 0, high = locations.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (locations[mid].getTimestamp().compareTo(timestamp) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
+		}
+		return low;
+	}
 
+	/**
+	 * Returns a copy of the locations in the given time range. This instance is not modified, so it can be queried again
+	 *
+	 * @param start the first included timestamp, or <code>null</code> to start from the first location
+	 * @param end   the last included timestamp, or <code>null</code> to end with the last location
+	 * @return the locations, or <code>null</code> if there are none in the range
+	 */
+	@Nullable
+	public Locations between(@Nullable Instant start, @Nullable Instant end) {
+		final int from = start == null ? 0 : indexOf(start);
+		int to = locations.length;
+		if (end != null) {
+			to = indexOf(end);
+			while (to < locations.length && locations[to].getTimestamp().equals(end)) {
+				to++;
+			}
+		}
+		if (from >= to) {
+			return null;
+		}
+		final Location first = locations[from].asOrphan();
+		Location previous = first;
+		for (int i = from + 1; i < to; i++) {
+			final Location location = locations[i].asOrphan();
+			location.setPrevious(previous);
+			previous.setNext(location);
+			previous = location;
 		}
 		return new Locations(first);
 	}
 
+	/**
+	 * Returns lazy frames where the first location is the same, and than each subsequent one is always exactly after the specified duration
+	 *
+	 * @param duration the duration
+	 * @return a new {@link StaticDurationFrames}
+	 */
+	@NotNull
+	public Frames interpolateWithStaticDuration(@NotNull Duration duration) {
+		return new StaticDurationFrames(this, duration);
+	}
+
+	/**
+	 * Returns lazy frames where the first location is the same, and than each subsequent one is placed after the given
+	 * distance in on-screen pixels has been travelled, so that the number of frames follows the visual change instead of the time.
+	 *
+	 * @param pixels      the distance, in pixels, between two subsequent locations
+	 * @param zoom        the zoom level at which the pixels are measured
+	 * @param minDuration the minimum duration between two subsequent locations
+	 * @param maxDuration the maximum duration between two subsequent locations
+	 * @return a new {@link PixelDistanceFrames}
+	 */
+	@NotNull
+	public Frames interpolateWithPixelDistance(double pixels, int zoom, @NotNull Duration minDuration, @NotNull Duration maxDuration) {
+		return new PixelDistanceFrames(this, pixels, zoom, minDuration, maxDuration);
+	}
+
 	@NotNull
 	@Override
 	public Iterator<Location> iterator() {
 		return new Iterator<Location>() {
 
-			private Location current = firstLocation;
+			private int position = 0;
 
 			@Override
 			public boolean hasNext() {
-				return current.hasNext();
+				return position < locations.length;
 			}
 
 			@Override
 			public Location next() {
-				final Location ret = current;
-				current = current.getNext();
-				return ret;
+				if (position >= locations.length) {
+					throw new NoSuchElementException();
+				}
+				return locations[position++];
 			}
 		};
 	}
@@ -1,18 +1,33 @@
 package com.github.mmauro.glhmg.datastruct;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class MapParams {
 
 	@NotNull
 	private final Location location;
+	/**
+	 * The center of the map, or <code>null</code> if the map is centered in the location
+	 */
+	@Nullable
+	private final WorldCoordinate center;
 	@NotNull
 	private final MapSize size;
 	private final int zoom;
 	private final int scale;
 
 	public MapParams(@NotNull Location location, @NotNull MapSize size, int zoom, int scale) {
+		this(location, null, size, zoom, scale);
+	}
+
+	/**
+	 * @param location the location of the frame, where the path ends
+	 * @param center   the center of the map, or <code>null</code> to center it in the location
+	 */
+	public MapParams(@NotNull Location location, @Nullable WorldCoordinate center, @NotNull MapSize size, int zoom, int scale) {
 		this.location = location;
+		this.center = center;
 		if (zoom < 0) {
 			throw new IllegalArgumentException("zoom < 0");
 		} else if (scale <= 0) {
@@ -28,6 +43,28 @@ public class MapParams {
 		return location;
 	}
 
+	/**
+	 * @return the x world coordinate of the center of the map
+	 */
+	public double getCenterX() {
+		return center == null ? location.getWorldX() : center.getX();
+	}
+
+	/**
+	 * @return the y world coordinate of the center of the map
+	 */
+	public double getCenterY() {
+		return center == null ? location.getWorldY() : center.getY();
+	}
+
+	/**
+	 * @return the coordinates of the center of the map
+	 */
+	@NotNull
+	public LatLng getCenterLatLng() {
+		return center == null ? location.getLatLng() : new LatLng(GeoMath.toLatitude(center.getY()), GeoMath.toLongitude(center.getX()));
+	}
+
 	@NotNull
 	public MapSize getSize() {
 		return size;
@@ -0,0 +1,97 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+
+/**
+ * Frames placed each time the given distance in on-screen pixels has been travelled, so that the number of frames follows
+ * the visual change instead of the time
+ */
+public final class PixelDistanceFrames extends InterpolatedFrames {
+
+	private final double worldDistance;
+	@NotNull
+	private final Duration minDuration, maxDuration;
+	private int size = -1;
+
+	/**
+	 * @param pixels      the distance, in pixels, between two subsequent frames
+	 * @param zoom        the zoom level at which the pixels are measured
+	 * @param minDuration the minimum duration between two subsequent frames
+	 * @param maxDuration the maximum duration between two subsequent frames
+	 */
+	public PixelDistanceFrames(@NotNull Locations locations, double pixels, int zoom, @NotNull Duration minDuration, @NotNull Duration maxDuration) {
+		super(locations);
+		if (pixels <= 0) {
+			throw new IllegalArgumentException("pixels <= 0");
+		} else if (minDuration.isNegative() || minDuration.isZero()) {
+			throw new IllegalArgumentException("minDuration <= 0");
+		} else if (maxDuration.compareTo(minDuration) < 0) {
+			throw new IllegalArgumentException("maxDuration < minDuration");
+		}
+		this.worldDistance = pixels / Math.pow(2, zoom);
+		this.minDuration = minDuration;
+		this.maxDuration = maxDuration;
+	}
+
+	/**
+	 * The number of frames can't be known in advance, so the first call walks all the frames once, without retaining them
+	 */
+	@Override
+	public synchronized int size() {
+		if (size < 0) {
+			int count = 0;
+			final Iterator<Location> iterator = iterator();
+			while (iterator.hasNext()) {
+				iterator.next();
+				count++;
+			}
+			size = count;
+		}
+		return size;
+	}
+
+	/**
+	 * Walks the path starting from <code>lastFrame</code> (that lies between <code>segmentStart</code> and its next) and finds when the distance has been travelled
+	 *
+	 * @return the timestamp, bounded between <code>minDuration</code> and <code>maxDuration</code> after the one of <code>lastFrame</code>
+	 */
+	@NotNull
+	@Override
+	protected Instant getNextTimestamp(@NotNull Location segmentStart, @NotNull Location lastFrame) {
+		final Instant minTimestamp = lastFrame.getTimestamp().plus(minDuration);
+		final Instant maxTimestamp = lastFrame.getTimestamp().plus(maxDuration);
+
+		double remaining = worldDistance;
+		double x = lastFrame.getWorldX(), y = lastFrame.getWorldY();
+		Instant positionTimestamp = lastFrame.getTimestamp();
+		Location segment = segmentStart;
+		Instant found = maxTimestamp;
+		while (segment.hasNext() && positionTimestamp.isBefore(maxTimestamp)) {
+			final Location segmentEnd = segment.getNext();
+			final double endX = segmentEnd.getWorldX(), endY = segmentEnd.getWorldY();
+			final double distance = Math.sqrt((endX - x) * (endX - x) + (endY - y) * (endY - y));
+			if (distance >= remaining) {
+				final long nanos = Duration.between(positionTimestamp, segmentEnd.getTimestamp()).toNanos();
+				found = positionTimestamp.plusNanos(Math.round(nanos * (remaining / distance)));
+				break;
+			}
+			remaining -= distance;
+			x = endX;
+			y = endY;
+			positionTimestamp = segmentEnd.getTimestamp();
+			segment = segmentEnd;
+		}
+
+		if (found.isBefore(minTimestamp)) {
+			return minTimestamp;
+		} else if (found.isAfter(maxTimestamp)) {
+			return maxTimestamp;
+		} else {
+			return found;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Frames where each one is exactly after the given duration from the previous one
+ */
+public final class StaticDurationFrames extends InterpolatedFrames {
+
+	@NotNull
+	private final Duration duration;
+	private final int size;
+
+	public StaticDurationFrames(@NotNull Locations locations, @NotNull Duration duration) {
+		super(locations);
+		if (duration.isNegative() || duration.isZero()) {
+			throw new IllegalArgumentException("duration <= 0");
+		}
+		this.duration = duration;
+
+		//Frames are generated while their timestamp is before the last one, so their number is ceil(span / duration)
+		final long span = Duration.between(locations.getFirst().getTimestamp(), locations.getLast().getTimestamp()).toNanos();
+		final long step = duration.toNanos();
+		this.size = span == 0 ? 1 : Math.toIntExact((span + step - 1) / step);
+	}
+
+	@Contract(pure = true)
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@NotNull
+	@Override
+	protected Instant getNextTimestamp(@NotNull Location segmentStart, @NotNull Location lastFrame) {
+		return lastFrame.getTimestamp().plus(duration);
+	}
+}
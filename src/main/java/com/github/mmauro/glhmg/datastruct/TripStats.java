@@ -0,0 +1,201 @@
+package com.github.mmauro.glhmg.datastruct;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Statistics of a trip, backed by prefix arrays of distance, moving time and altitude gain computed in a single pass,
+ * so that the statistics of any interval or frame take constant time
+ */
+public final class TripStats {
+
+	/**
+	 * Segments slower than this, in meters per second, are considered stops and don't count as moving time
+	 */
+	public static final double MOVING_SPEED = 0.5;
+
+	@NotNull
+	private final Locations locations;
+	/**
+	 * The timestamps, in epoch milliseconds
+	 */
+	@NotNull
+	private final long[] millis;
+	/**
+	 * Distance, moving time and altitude gain from the first location to the one at each position
+	 */
+	@NotNull
+	private final double[] distance, altitudeGain;
+	@NotNull
+	private final long[] movingMillis;
+
+	TripStats(@NotNull Locations locations) {
+		this.locations = locations;
+		final int size = locations.size();
+		millis = new long[size];
+		distance = new double[size];
+		altitudeGain = new double[size];
+		movingMillis = new long[size];
+
+		final double[] lat = new double[size], lon = new double[size], cosLat = new double[size];
+		for (int i = 0; i < size; i++) {
+			final Location location = locations.get(i);
+			lat[i] = location.getLatLng().getLatitude();
+			lon[i] = location.getLatLng().getLongitude();
+			millis[i] = location.getTimestamp().toEpochMilli();
+		}
+		GeoMath.toRadians(lat, lat, size);
+		GeoMath.toRadians(lon, lon, size);
+		GeoMath.cos(lat, cosLat, size);
+		GeoMath.getSegmentMeters(lat, lon, cosLat, distance, size);
+
+		Location previous = locations.getFirst();
+		for (int i = 1; i < size; i++) {
+			final Location location = locations.get(i);
+			final double segment = distance[i];
+			final long segmentMillis = millis[i] - millis[i - 1];
+			distance[i] = distance[i - 1] + segment;
+			movingMillis[i] = movingMillis[i - 1] + (segmentMillis > 0 && segment * 1000 / segmentMillis >= MOVING_SPEED ? segmentMillis : 0);
+			altitudeGain[i] = altitudeGain[i - 1];
+			if (location.hasAltitude() && previous.hasAltitude() && location.getAltitude() > previous.getAltitude()) {
+				altitudeGain[i] += location.getAltitude() - previous.getAltitude();
+			}
+			previous = location;
+		}
+	}
+
+	/**
+	 * @return the distance, in meters, travelled between the locations at the given positions
+	 */
+	@Contract(pure = true)
+	public double getDistance(int from, int to) {
+		return distance[to] - distance[from];
+	}
+
+	/**
+	 * @return the time spent moving between the locations at the given positions
+	 * @see #MOVING_SPEED
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public Duration getMovingTime(int from, int to) {
+		return Duration.ofMillis(movingMillis[to] - movingMillis[from]);
+	}
+
+	/**
+	 * @return the sum, in meters, of the climbs between the locations at the given positions
+	 */
+	@Contract(pure = true)
+	public double getAltitudeGain(int from, int to) {
+		return altitudeGain[to] - altitudeGain[from];
+	}
+
+	/**
+	 * @return the average speed, in meters per second, while moving between the locations at the given positions
+	 */
+	@Contract(pure = true)
+	public double getAverageMovingSpeed(int from, int to) {
+		final long moving = movingMillis[to] - movingMillis[from];
+		return moving == 0 ? 0 : getDistance(from, to) * 1000 / moving;
+	}
+
+	/**
+	 * @return the distance, in meters, travelled from the first location to the given frame
+	 */
+	@Contract(pure = true)
+	public double getDistanceTo(@NotNull Location frame) {
+		final int position = getSegmentStart(frame);
+		final Location segmentStart = locations.get(position);
+		if (segmentStart == frame) {
+			return distance[position];
+		} else {
+			return distance[position] + LatLng.getMetersDistance(segmentStart.getLatLng(), frame.getLatLng());
+		}
+	}
+
+	/**
+	 * @return the time spent moving from the first location to the given frame
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public Duration getMovingTimeTo(@NotNull Location frame) {
+		final int position = getSegmentStart(frame);
+		long moving = movingMillis[position];
+		if (position + 1 < millis.length && movingMillis[position + 1] > moving) {
+			//The frame is within a moving segment
+			moving += frame.getTimestamp().toEpochMilli() - millis[position];
+		}
+		return Duration.ofMillis(moving);
+	}
+
+	/**
+	 * @return the sum, in meters, of the climbs from the first location to the given frame
+	 */
+	@Contract(pure = true)
+	public double getAltitudeGainTo(@NotNull Location frame) {
+		return altitudeGain[getSegmentStart(frame)];
+	}
+
+	/**
+	 * @return the speed, in meters per second, of the segment that contains the given frame
+	 */
+	@Contract(pure = true)
+	public double getSpeed(@NotNull Location frame) {
+		if (millis.length < 2) {
+			return 0;
+		}
+		final int from = Math.min(getSegmentStart(frame), millis.length - 2);
+		final long segmentMillis = millis[from + 1] - millis[from];
+		return segmentMillis <= 0 ? 0 : getDistance(from, from + 1) * 1000 / segmentMillis;
+	}
+
+	/**
+	 * @return the total distance, in meters
+	 */
+	@Contract(pure = true)
+	public double getTotalDistance() {
+		return distance[distance.length - 1];
+	}
+
+	/**
+	 * @return the total time spent moving
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public Duration getTotalMovingTime() {
+		return getMovingTime(0, movingMillis.length - 1);
+	}
+
+	/**
+	 * @return the total altitude gain, in meters
+	 */
+	@Contract(pure = true)
+	public double getTotalAltitudeGain() {
+		return altitudeGain[altitudeGain.length - 1];
+	}
+
+	/**
+	 * @return the average speed, in meters per second, while moving
+	 */
+	@Contract(pure = true)
+	public double getAverageMovingSpeed() {
+		return getAverageMovingSpeed(0, movingMillis.length - 1);
+	}
+
+	/**
+	 * @return the position of the given frame, or of the location that starts its segment if it has been interpolated
+	 * @throws IllegalArgumentException if the frame doesn't belong to the locations of these stats
+	 */
+	private int getSegmentStart(@NotNull Location frame) {
+		int position = frame.getPosition(locations);
+		if (position < 0 && frame.hasPrevious()) {
+			position = frame.getPrevious().getPosition(locations);
+		}
+		if (position < 0) {
+			throw new IllegalArgumentException("The frame is not part of these locations");
+		}
+		return position;
+	}
+}
@@ -0,0 +1,200 @@
+package com.github.mmauro.glhmg.event;
+
+import com.github.mmauro.glhmg.OutUtils;
+import com.github.mmauro.glhmg.RenderException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the events to another listener from a dedicated thread, so that writing them never stalls the pipeline.
+ * <p>
+ * Progress events (parse progress, frame started, frame completed or skipped) are rate limited: only the latest
+ * of each kind is kept, and it is delivered at most once per interval. The other events are all delivered, in order,
+ * each one after the progress that preceded it
+ */
+public final class AsyncListener implements RenderListener, Closeable {
+
+	public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+	private static final int PARSE = 0, STARTED = 1, PROGRESS = 2;
+	private static final Consumer<RenderListener> STOP = listener -> {
+	};
+
+	/**
+	 * A frame completed or skipped. Since they are notified by more threads, an older one can arrive after a newer one
+	 */
+	private static final class FrameProgress implements Consumer<RenderListener> {
+		@NotNull
+		private final String name;
+		private final int done, total;
+		private final boolean skipped;
+
+		private FrameProgress(@NotNull String name, int done, int total, boolean skipped) {
+			this.name = name;
+			this.done = done;
+			this.total = total;
+			this.skipped = skipped;
+		}
+
+		@Override
+		public void accept(@NotNull RenderListener listener) {
+			if (skipped) {
+				listener.onFrameSkipped(name, done, total);
+			} else {
+				listener.onFrameCompleted(name, done, total);
+			}
+		}
+	}
+
+	@NotNull
+	private final RenderListener delegate;
+	private final long intervalNanos;
+	@NotNull
+	private final BlockingQueue<Consumer<RenderListener>> events = new LinkedBlockingQueue<>();
+	/**
+	 * The latest progress event of each kind that hasn't been delivered yet
+	 */
+	@NotNull
+	private final AtomicReferenceArray<Consumer<RenderListener>> progress = new AtomicReferenceArray<>(3);
+	@NotNull
+	private final Thread thread;
+	/**
+	 * The number of frames done of the last delivered {@link FrameProgress}, only accessed by the thread
+	 */
+	private int deliveredDone;
+
+	public AsyncListener(@NotNull RenderListener delegate) {
+		this(delegate, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param intervalMillis the minimum time between the deliveries of the progress events
+	 */
+	public AsyncListener(@NotNull RenderListener delegate, long intervalMillis) {
+		this.delegate = delegate;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		thread = new Thread(this::run, "glhmg-events");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		try {
+			long nextProgress = System.nanoTime();
+			while (true) {
+				final Consumer<RenderListener> event = events.poll(Math.max(0, nextProgress - System.nanoTime()), TimeUnit.NANOSECONDS);
+				if (event != null || System.nanoTime() >= nextProgress) {
+					flushProgress();
+					nextProgress = System.nanoTime() + intervalNanos;
+				}
+				if (event == STOP) {
+					return;
+				} else if (event != null) {
+					deliver(event);
+				}
+			}
+		} catch (InterruptedException ignored) {
+		}
+	}
+
+	private void flushProgress() {
+		for (int i = 0; i < progress.length(); i++) {
+			final Consumer<RenderListener> event = progress.getAndSet(i, null);
+			if (event instanceof FrameProgress) {
+				final FrameProgress frame = (FrameProgress) event;
+				if (frame.done > deliveredDone) {
+					deliveredDone = frame.done;
+					deliver(frame);
+				}
+			} else if (event != null) {
+				deliver(event);
+			}
+		}
+	}
+
+	private void deliver(@NotNull Consumer<RenderListener> event) {
+		try {
+			event.accept(delegate);
+		} catch (RuntimeException e) {
+			OutUtils.warn("Error delivering event: " + e);
+		}
+	}
+
+	@Override
+	public void onParseProgress(int locations) {
+		progress.set(PARSE, listener -> listener.onParseProgress(locations));
+	}
+
+	@Override
+	public void onLocationsLoaded(int locations) {
+		events.add(listener -> listener.onLocationsLoaded(locations));
+	}
+
+	@Override
+	public void onRenderStarted(int total) {
+		events.add(listener -> listener.onRenderStarted(total));
+	}
+
+	@Override
+	public void onFrameStarted(@NotNull String name) {
+		progress.set(STARTED, listener -> listener.onFrameStarted(name));
+	}
+
+	@Override
+	public void onFrameCompleted(@NotNull String name, int done, int total) {
+		setFrameProgress(new FrameProgress(name, done, total, false));
+	}
+
+	@Override
+	public void onFrameSkipped(@NotNull String name, int done, int total) {
+		setFrameProgress(new FrameProgress(name, done, total, true));
+	}
+
+	/**
+	 * Keeps the most advanced progress
+	 */
+	private void setFrameProgress(@NotNull FrameProgress frame) {
+		progress.accumulateAndGet(PROGRESS, frame, (old, next) -> old != null && ((FrameProgress) old).done > ((FrameProgress) next).done ? old : next);
+	}
+
+	@Override
+	public void onRenderCompleted(long written) {
+		events.add(listener -> listener.onRenderCompleted(written));
+	}
+
+	@Override
+	public void onError(@NotNull RenderException e) {
+		events.add(listener -> listener.onError(e));
+	}
+
+	@Override
+	public void flush() {
+		final CountDownLatch delivered = new CountDownLatch(1);
+		events.add(listener -> delivered.countDown());
+		try {
+			delivered.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Delivers the pending events and stops the thread
+	 */
+	@Override
+	public void close() {
+		events.add(STOP);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.github.mmauro.glhmg.event;
+
+import com.github.mmauro.glhmg.OutUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Prints the progress in human readable lines with {@link OutUtils}
+ */
+public final class ConsoleListener implements RenderListener {
+
+	@Override
+	public void onParseProgress(int locations) {
+		OutUtils.verbose("Parsed " + locations + " locations");
+	}
+
+	@Override
+	public void onFrameCompleted(@NotNull String name, int done, int total) {
+		OutUtils.standard("Rendered image " + done + "/" + total);
+	}
+
+	@Override
+	public void onFrameSkipped(@NotNull String name, int done, int total) {
+		OutUtils.verbose("Skipped image " + done + "/" + total);
+	}
+}
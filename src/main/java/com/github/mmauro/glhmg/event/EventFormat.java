@@ -0,0 +1,39 @@
+package com.github.mmauro.glhmg.event;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How the events of a run are printed on the standard output
+ */
+public enum EventFormat {
+	/**
+	 * @see ConsoleListener
+	 */
+	TEXT,
+	/**
+	 * @see JsonLinesListener
+	 */
+	NDJSON;
+
+	@NotNull
+	public RenderListener create() {
+		switch (this) {
+			case TEXT:
+				return new ConsoleListener();
+			case NDJSON:
+				return new JsonLinesListener(System.out);
+			default:
+				throw new IllegalStateException();
+		}
+	}
+
+	@NotNull
+	public static EventFormat parse(@NotNull String str) {
+		for (EventFormat format : values()) {
+			if (format.name().equalsIgnoreCase(str)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Invalid event format: " + str);
+	}
+}
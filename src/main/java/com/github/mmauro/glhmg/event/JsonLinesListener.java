@@ -0,0 +1,126 @@
+package com.github.mmauro.glhmg.event;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.github.mmauro.glhmg.OutUtils;
+import com.github.mmauro.glhmg.RenderException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes each event as a JSON object on its own line (newline delimited JSON), with the name of the event in
+ * <code>event</code> and the epoch milliseconds in <code>time</code>, e.g.
+ * <code>{"event":"frame_completed","time":1500000000000,"name":"000042","done":42,"total":100}</code>
+ */
+public final class JsonLinesListener implements RenderListener {
+
+	@NotNull
+	private final JsonGenerator json;
+
+	public JsonLinesListener(@NotNull OutputStream out) {
+		try {
+			json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)
+					.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+					.setPrettyPrinter(new MinimalPrettyPrinter(""));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void start(@NotNull String event) throws IOException {
+		json.writeStartObject();
+		json.writeStringField("event", event);
+		json.writeNumberField("time", System.currentTimeMillis());
+	}
+
+	private void end() throws IOException {
+		json.writeEndObject();
+		//Ended here instead of with a root separator, which would be written only before the next event
+		json.writeRaw('\n');
+		json.flush();
+	}
+
+	private void failed(@NotNull IOException e) {
+		OutUtils.warn("Unable to write event: " + e.getMessage());
+	}
+
+	private synchronized void simple(@NotNull String event, @NotNull String field, long value) {
+		try {
+			start(event);
+			json.writeNumberField(field, value);
+			end();
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	private synchronized void frame(@NotNull String event, @NotNull String name, int done, int total) {
+		try {
+			start(event);
+			json.writeStringField("name", name);
+			if (total > 0) {
+				json.writeNumberField("done", done);
+				json.writeNumberField("total", total);
+			}
+			end();
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	@Override
+	public void onParseProgress(int locations) {
+		simple("parse_progress", "locations", locations);
+	}
+
+	@Override
+	public void onLocationsLoaded(int locations) {
+		simple("locations_loaded", "locations", locations);
+	}
+
+	@Override
+	public void onRenderStarted(int total) {
+		simple("render_started", "total", total);
+	}
+
+	@Override
+	public void onFrameStarted(@NotNull String name) {
+		frame("frame_started", name, 0, 0);
+	}
+
+	@Override
+	public void onFrameCompleted(@NotNull String name, int done, int total) {
+		frame("frame_completed", name, done, total);
+	}
+
+	@Override
+	public void onFrameSkipped(@NotNull String name, int done, int total) {
+		frame("frame_skipped", name, done, total);
+	}
+
+	@Override
+	public void onRenderCompleted(long written) {
+		simple("render_completed", "written", written);
+	}
+
+	@Override
+	public synchronized void onError(@NotNull RenderException e) {
+		try {
+			start("error");
+			json.writeStringField("message", e.getMessage());
+			json.writeNumberField("exitCode", e.getExitCode());
+			final Throwable cause = e.getCause();
+			if (cause != null) {
+				json.writeStringField("cause", cause.toString());
+			}
+			end();
+		} catch (IOException ex) {
+			failed(ex);
+		}
+	}
+}
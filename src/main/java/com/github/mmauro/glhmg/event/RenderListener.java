@@ -0,0 +1,85 @@
+package com.github.mmauro.glhmg.event;
+
+import com.github.mmauro.glhmg.RenderException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the events of a run, from parsing the location history to writing the last frame.
+ * <p>
+ * The frame events are called from the threads of the pipeline, so implementations must be thread safe and fast;
+ * slow ones should be wrapped in an {@link AsyncListener}. All the methods do nothing by default
+ */
+public interface RenderListener {
+
+	/**
+	 * A listener that ignores all the events
+	 */
+	RenderListener NONE = new RenderListener() {
+	};
+
+	/**
+	 * Called periodically while the location history is parsed
+	 *
+	 * @param locations the number of locations parsed so far
+	 */
+	default void onParseProgress(int locations) {
+	}
+
+	/**
+	 * Called once the locations have been parsed and filtered
+	 */
+	default void onLocationsLoaded(int locations) {
+	}
+
+	/**
+	 * Called before the first frame is rendered
+	 *
+	 * @param total the number of images that will be rendered, in all the renditions
+	 */
+	default void onRenderStarted(int total) {
+	}
+
+	/**
+	 * Called when a frame starts being rendered
+	 *
+	 * @param name the name of the output file of the frame, without extension
+	 */
+	default void onFrameStarted(@NotNull String name) {
+	}
+
+	/**
+	 * Called after a frame is written
+	 *
+	 * @param done the number of frames written or skipped so far
+	 */
+	default void onFrameCompleted(@NotNull String name, int done, int total) {
+	}
+
+	/**
+	 * Called when a frame is not rendered because its output already exists
+	 *
+	 * @param done the number of frames written or skipped so far
+	 */
+	default void onFrameSkipped(@NotNull String name, int done, int total) {
+	}
+
+	/**
+	 * Called once all the frames have been rendered
+	 *
+	 * @param written the number of images written
+	 */
+	default void onRenderCompleted(long written) {
+	}
+
+	/**
+	 * Called when the run fails
+	 */
+	default void onError(@NotNull RenderException e) {
+	}
+
+	/**
+	 * Waits until the events notified so far have been handled, so that what is printed next follows them
+	 */
+	default void flush() {
+	}
+}
@@ -0,0 +1,169 @@
+package com.github.mmauro.glhmg.filter;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.Locations;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a list of {@link LocationFilter}s and an optional {@link MedianSmoother} to a {@link Locations} in a single pass
+ */
+public class FilterChain {
+
+	@NotNull
+	private final List<LocationFilter> filters;
+	private final int smoothingWindow;
+	@NotNull
+	private final Map<String, Integer> dropped = new LinkedHashMap<>();
+	@NotNull
+	private final FilteredLookahead[] lookaheads;
+
+	/**
+	 * @param filters         the filters, applied in the given order
+	 * @param smoothingWindow the window of the {@link MedianSmoother}, or <code>1</code> to disable the smoothing
+	 */
+	public FilterChain(@NotNull List<LocationFilter> filters, int smoothingWindow) {
+		this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+		this.smoothingWindow = smoothingWindow;
+		for (LocationFilter filter : filters) {
+			dropped.put(filter.getName(), 0);
+		}
+		this.lookaheads = new FilteredLookahead[filters.size()];
+		for (int i = 0; i < lookaheads.length; i++) {
+			lookaheads[i] = new FilteredLookahead(i);
+		}
+	}
+
+	@Contract(pure = true)
+	public boolean isEmpty() {
+		return filters.isEmpty() && smoothingWindow <= 1;
+	}
+
+	/**
+	 * @return the number of locations dropped by each filter during the last {@link #apply(Locations)}, in the order of the filters
+	 */
+	@NotNull
+	public Map<String, Integer> getDropped() {
+		return Collections.unmodifiableMap(dropped);
+	}
+
+	/**
+	 * Filters and smooths the given locations
+	 *
+	 * @return a new {@link Locations}, or <code>null</code> if all locations have been dropped
+	 */
+	@Nullable
+	public Locations apply(@NotNull Locations locations) {
+		for (LocationFilter filter : filters) {
+			dropped.put(filter.getName(), 0);
+		}
+		final MedianSmoother smoother = smoothingWindow > 1 ? new MedianSmoother(smoothingWindow) : null;
+		final Linker linker = new Linker();
+
+		Location lastAccepted = null;
+		Location location = locations.getFirst();
+		while (location != null) {
+			//Reads the next one before the links of this location are overwritten by the linker
+			final Location next = location.hasNext() ? location.getNext() : null;
+			if (accept(lastAccepted, location, next)) {
+				lastAccepted = location;
+				linker.add(smoother == null ? location : smoother.push(location));
+			}
+			location = next;
+		}
+		if (smoother != null) {
+			Location smoothed;
+			while ((smoothed = smoother.flush()) != null) {
+				linker.add(smoothed);
+			}
+		}
+		return linker.first == null ? null : new Locations(linker.first);
+	}
+
+	private boolean accept(@Nullable Location lastAccepted, @NotNull Location location, @Nullable Location next) {
+		for (int i = 0; i < filters.size(); i++) {
+			final LocationFilter filter = filters.get(i);
+			lookaheads[i].reset(lastAccepted, next);
+			if (!filter.accept(lastAccepted, location, lookaheads[i])) {
+				dropped.merge(filter.getName(), 1, Integer::sum);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The locations not processed yet that are kept by the filters before the given one, tested against the same last
+	 * accepted location. They are found lazily, since most filters don't look ahead
+	 */
+	private final class FilteredLookahead implements LocationFilter.Lookahead {
+		private final int filterIndex;
+		@NotNull
+		private final List<Location> found = new ArrayList<>();
+		@Nullable
+		private Location lastAccepted, cursor;
+
+		private FilteredLookahead(int filterIndex) {
+			this.filterIndex = filterIndex;
+		}
+
+		/**
+		 * @param next the location after the tested one in the input. Its links and the ones after it haven't been changed by the {@link Linker} yet
+		 */
+		void reset(@Nullable Location lastAccepted, @Nullable Location next) {
+			this.lastAccepted = lastAccepted;
+			this.cursor = next;
+			found.clear();
+		}
+
+		@Nullable
+		@Override
+		public Location get(int index) {
+			while (found.size() <= index && cursor != null) {
+				final Location candidate = cursor;
+				cursor = candidate.optNext();
+				if (isKept(candidate)) {
+					found.add(candidate);
+				}
+			}
+			return index < found.size() ? found.get(index) : null;
+		}
+
+		private boolean isKept(@NotNull Location candidate) {
+			for (int i = 0; i < filterIndex; i++) {
+				if (!filters.get(i).accept(lastAccepted, candidate, LocationFilter.Lookahead.NONE)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Links together the locations that survive the chain
+	 */
+	private static final class Linker {
+		private Location first, last;
+
+		void add(@Nullable Location location) {
+			if (location == null) {
+				return;
+			}
+			location.setPrevious(last);
+			location.setNext(null);
+			if (last == null) {
+				first = location;
+			} else {
+				last.setNext(location);
+			}
+			last = location;
+		}
+	}
+}
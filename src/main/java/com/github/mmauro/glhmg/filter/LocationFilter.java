@@ -0,0 +1,43 @@
+package com.github.mmauro.glhmg.filter;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A rule that decides whether a location should be kept. Rules are applied in order of time by a {@link FilterChain}
+ */
+public interface LocationFilter {
+
+	/**
+	 * The locations that follow the one being tested
+	 */
+	interface Lookahead {
+		/**
+		 * A lookahead without locations, given to the filters while they are testing the following locations of another one
+		 */
+		Lookahead NONE = index -> null;
+
+		/**
+		 * @param index the position after the tested location, from <code>0</code>
+		 * @return the location at the given position among the following ones that are kept by the filters before this one
+		 * in the chain, or <code>null</code> if there are fewer
+		 */
+		@Nullable
+		Location get(int index);
+	}
+
+	/**
+	 * @return a short name of the rule, used when reporting how many points have been dropped
+	 */
+	@NotNull
+	String getName();
+
+	/**
+	 * @param lastAccepted the last location that was kept by the chain, or <code>null</code> if <code>location</code> is the first one
+	 * @param location     the location to test
+	 * @param ahead        the locations after <code>location</code>, not tested by this filter yet
+	 * @return <code>true</code> if the location should be kept
+	 */
+	boolean accept(@Nullable Location lastAccepted, @NotNull Location location, @NotNull Lookahead ahead);
+}
@@ -0,0 +1,34 @@
+package com.github.mmauro.glhmg.filter;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Drops the locations whose accuracy radius is bigger than the given one
+ */
+public class MaxAccuracyFilter implements LocationFilter {
+
+	private final int maxAccuracy;
+
+	/**
+	 * @param maxAccuracy the maximum accepted accuracy radius, in meters
+	 */
+	public MaxAccuracyFilter(int maxAccuracy) {
+		if (maxAccuracy <= 0) {
+			throw new IllegalArgumentException("maxAccuracy <= 0");
+		}
+		this.maxAccuracy = maxAccuracy;
+	}
+
+	@NotNull
+	@Override
+	public String getName() {
+		return "max-accuracy";
+	}
+
+	@Override
+	public boolean accept(@Nullable Location lastAccepted, @NotNull Location location, @NotNull Lookahead ahead) {
+		return location.getAccuracy() <= maxAccuracy;
+	}
+}
@@ -0,0 +1,86 @@
+package com.github.mmauro.glhmg.filter;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Drops the GPS spikes: the locations that would require an implausible speed to be reached from the last accepted one,
+ * when the track comes back near the last accepted one soon after them. If instead the following locations continue from
+ * the far one, the track has jumped (e.g. the device was off during a flight) and the location is kept, so that an
+ * outlier cannot make all the locations after it be dropped.
+ * <p>
+ * The first location has nothing before it, so it's dropped when it's far from all the following ones, while these agree with each other
+ */
+public class MaxSpeedFilter implements LocationFilter {
+
+	/**
+	 * The number of following locations looked at to tell a spike from a jump. Longer runs of outliers that agree with
+	 * each other are considered a jump
+	 */
+	private static final int LOOKAHEAD = 10;
+
+	private final double maxKmPerHour;
+
+	/**
+	 * @param maxKmPerHour the maximum plausible speed, in km/h
+	 */
+	public MaxSpeedFilter(double maxKmPerHour) {
+		if (maxKmPerHour <= 0) {
+			throw new IllegalArgumentException("maxKmPerHour <= 0");
+		}
+		this.maxKmPerHour = maxKmPerHour;
+	}
+
+	@NotNull
+	@Override
+	public String getName() {
+		return "max-speed";
+	}
+
+	@Override
+	public boolean accept(@Nullable Location lastAccepted, @NotNull Location location, @NotNull Lookahead ahead) {
+		if (lastAccepted == null) {
+			return isAnchor(location, ahead);
+		} else if (isPlausible(lastAccepted, location)) {
+			return true;
+		}
+		boolean continues = false;
+		for (int i = 0; i < LOOKAHEAD; i++) {
+			final Location following = ahead.get(i);
+			if (following == null) {
+				break;
+			}
+			final boolean fromLast = isPlausible(lastAccepted, following), fromLocation = isPlausible(location, following);
+			if (fromLast && !fromLocation) {
+				//The track comes back: this location and the ones up to the following are a spike
+				return false;
+			}
+			continues |= fromLocation && !fromLast;
+		}
+		return continues;
+	}
+
+	/**
+	 * @return whether the first location should be kept
+	 */
+	private boolean isAnchor(@NotNull Location location, @NotNull Lookahead ahead) {
+		boolean agree = false;
+		Location previous = null;
+		for (int i = 0; i < LOOKAHEAD; i++) {
+			final Location following = ahead.get(i);
+			if (following == null) {
+				break;
+			} else if (isPlausible(location, following)) {
+				return true;
+			}
+			agree |= previous != null && isPlausible(previous, following);
+			previous = following;
+		}
+		return !agree;
+	}
+
+	private boolean isPlausible(@NotNull Location from, @NotNull Location to) {
+		return Location.getKmPerHourSpeed(from, to) <= maxKmPerHour;
+	}
+}
@@ -0,0 +1,85 @@
+package com.github.mmauro.glhmg.filter;
+
+import com.github.mmauro.glhmg.datastruct.LatLng;
+import com.github.mmauro.glhmg.datastruct.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Streaming median smoother: each location is moved to the median latitude and longitude of the window centered on it.
+ * Locations are pushed in order of time and are returned with a delay of half the window.
+ */
+public class MedianSmoother {
+
+	private final int window, half;
+	@NotNull
+	private final Location[] buffer;
+	@NotNull
+	private final double[] latitudes, longitudes;
+	private long pushed = 0, emitted = 0;
+
+	/**
+	 * @param window the size of the window. Must be odd and positive
+	 */
+	public MedianSmoother(int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window <= 0");
+		} else if (window % 2 == 0) {
+			throw new IllegalArgumentException("window must be odd");
+		}
+		this.window = window;
+		this.half = window / 2;
+		this.buffer = new Location[window];
+		this.latitudes = new double[window];
+		this.longitudes = new double[window];
+	}
+
+	/**
+	 * Adds a location to the window
+	 *
+	 * @return the smoothed location that became available, or <code>null</code> if the window isn't full enough yet
+	 */
+	@Nullable
+	public Location push(@NotNull Location location) {
+		buffer[(int) (pushed % window)] = location;
+		pushed++;
+		if (pushed - emitted > half) {
+			return emit();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the next smoothed location still in the window, or <code>null</code> if all the pushed locations have been returned
+	 */
+	@Nullable
+	public Location flush() {
+		return emitted < pushed ? emit() : null;
+	}
+
+	@NotNull
+	private Location emit() {
+		final long center = emitted++;
+		final long from = Math.max(center - half, Math.max(0, pushed - window));
+		final long to = Math.min(center + half, pushed - 1);
+		//Keeps the window symmetric at the edges, so that the first and last points aren't dragged inwards
+		final long radius = Math.min(center - from, to - center);
+		int count = 0;
+		for (long i = center - radius; i <= center + radius; i++) {
+			final LatLng latLng = buffer[(int) (i % window)].getLatLng();
+			latitudes[count] = latLng.getLatitude();
+			longitudes[count] = latLng.getLongitude();
+			count++;
+		}
+		final Location location = buffer[(int) (center % window)];
+		if (count == 1) {
+			return location;
+		}
+		Arrays.sort(latitudes, 0, count);
+		Arrays.sort(longitudes, 0, count);
+		return location.withLatLng(new LatLng(latitudes[count / 2], longitudes[count / 2]));
+	}
+}
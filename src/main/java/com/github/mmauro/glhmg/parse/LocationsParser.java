@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.github.mmauro.glhmg.OutUtils;
 import com.github.mmauro.glhmg.datastruct.Location;
 import com.github.mmauro.glhmg.datastruct.Locations;
+import com.github.mmauro.glhmg.event.RenderListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -23,12 +24,21 @@ public class LocationsParser {
 	 * Divisor of latitude and longitude ints
 	 */
 	private static final double LAT_LON_DIVISOR = 10000000d;
+	/**
+	 * Number of locations between two calls to {@link RenderListener#onParseProgress(int)}
+	 */
+	private static final int PROGRESS_STEP = 10000;
 
 	@NotNull
 	private final JsonParser jsonParser;
 	private boolean setUp = false;
 	private boolean end = false;
 	private int builtLocations = 0;
+	/**
+	 * Builder reused for every parsed location
+	 */
+	@NotNull
+	private final Location.Builder builder = new Location.Builder();
 
 
 	/**
@@ -100,6 +110,41 @@ public class LocationsParser {
 		}
 	}
 
+	/**
+	 * Parses a base 10 <code>long</code> directly from the text buffer of the current token, without allocating a {@link String}
+	 *
+	 * @throws ParseException if the text of the current token is not a valid <code>long</code>
+	 */
+	private long parseLongFromText() throws IOException, ParseException {
+		final char[] chars = jsonParser.getTextCharacters();
+		final int offset = jsonParser.getTextOffset();
+		final int length = jsonParser.getTextLength();
+		final int end = offset + length;
+
+		int i = offset;
+		final boolean negative = length > 0 && chars[i] == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == end || end - i > 18) {
+			//More than 18 digits could overflow: leave it to the slow path
+			try {
+				return Long.parseLong(jsonParser.getText());
+			} catch (NumberFormatException e) {
+				throw new ParseException("Invalid number " + jsonParser.getText(), e);
+			}
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			final int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new ParseException("Invalid number " + jsonParser.getText());
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
 	/**
 	 * Obtains the next location from the JSON
 	 *
@@ -115,7 +160,7 @@ public class LocationsParser {
 		}
 
 		while (true) {
-			final Location.Builder builder = new Location.Builder();
+			builder.reset();
 
 			jsonParser.nextToken();
 			if (jsonParser.currentToken() == JsonToken.END_ARRAY) {
@@ -124,62 +169,62 @@ public class LocationsParser {
 			} else {
 				currentExpect(JsonToken.START_OBJECT);
 			}
-			while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
-				currentExpect(JsonToken.FIELD_NAME);
-
-				final String fieldName = jsonParser.getText();
-				jsonParser.nextToken();
+			//Field names are canonicalized by Jackson's symbol table, so the switch below doesn't allocate anything
+			String fieldName;
+			while ((fieldName = jsonParser.nextFieldName()) != null) {
+				final JsonToken valueToken = jsonParser.nextToken();
 				switch (fieldName) {
 					case "timestampMs":
-						if (jsonParser.currentToken() == JsonToken.VALUE_STRING) {
-							builder.setTimestamp(Instant.ofEpochMilli(Long.parseLong(jsonParser.getText())));
-						} else if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_STRING) {
+							builder.setTimestamp(Instant.ofEpochMilli(parseLongFromText()));
+						} else if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							builder.setTimestamp(Instant.ofEpochMilli(jsonParser.getLongValue()));
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for timestamp value");
+							throw new ParseException("Unexpected token " + valueToken + " for timestamp value");
 						}
 						break;
 					case "latitudeE7":
-						if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							builder.setLatitude(jsonParser.getLongValue() / LAT_LON_DIVISOR);
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for latitudeE7 value");
+							throw new ParseException("Unexpected token " + valueToken + " for latitudeE7 value");
 						}
 						break;
 					case "longitudeE7":
-						if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							builder.setLongitude(jsonParser.getLongValue() / LAT_LON_DIVISOR);
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for longitudeE7 value");
+							throw new ParseException("Unexpected token " + valueToken + " for longitudeE7 value");
 						}
 						break;
 					case "accuracy":
-						if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							builder.setAccuracy(jsonParser.getIntValue());
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for accuracy value");
+							throw new ParseException("Unexpected token " + valueToken + " for accuracy value");
 						}
 						break;
 					case "altitude":
-						if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							builder.setAltitude(jsonParser.getIntValue());
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for altitude value");
+							throw new ParseException("Unexpected token " + valueToken + " for altitude value");
 						}
 						break;
 					case "heading":
-						if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+						if (valueToken == JsonToken.VALUE_NUMBER_INT) {
 							int heading = jsonParser.getIntValue();
 							if (heading >= 0)
 								builder.setHeading(heading);
 						} else {
-							throw new ParseException("Unexpected token " + jsonParser.currentToken() + " for heading value");
+							throw new ParseException("Unexpected token " + valueToken + " for heading value");
 						}
 						break;
 					default:
 						skipChildrenOrValue();
 				}
 			}
+			currentExpect(JsonToken.END_OBJECT);
 			if (builder.isBuildable()) {
 				builtLocations++;
 				if (builtLocations % 100000 == 0) {
@@ -193,17 +238,23 @@ public class LocationsParser {
 	/**
 	 * Parses all the locations, orders them, filters them and returns them
 	 *
+	 * @param listener notified of the progress of the parsing
 	 * @return a new {@link Locations} instance, or <code>null</code> if the JSON doesn't contain locations
 	 * @throws IOException    if an error occurs reading the JSON
 	 * @throws ParseException if an error occurs parsing the JSON
 	 */
 	@Nullable
-	public Locations getLocations(@Nullable Predicate<Location> filter) throws IOException, ParseException {
+	public Locations getLocations(@Nullable Predicate<Location> filter, @NotNull RenderListener listener) throws IOException, ParseException {
 		TreeSet<Location> treeSet = new TreeSet<>();
 		Location next;
+		int parsed = 0;
 		while ((next = next()) != null) {
 			treeSet.add(next);
+			if (++parsed % PROGRESS_STEP == 0) {
+				listener.onParseProgress(parsed);
+			}
 		}
+		listener.onParseProgress(parsed);
 		if (filter != null) {
 			treeSet = treeSet.stream().filter(filter).collect(Collectors.toCollection(TreeSet::new));
 		}
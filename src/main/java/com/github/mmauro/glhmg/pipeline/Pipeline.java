@@ -0,0 +1,453 @@
+package com.github.mmauro.glhmg.pipeline;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A chain of stages connected by bounded queues. Each stage runs on its own threads, and when a queue is full the stages
+ * before it wait, so that a fast stage cannot run too far ahead of a slow one.
+ * Stages with more threads complete the items out of order: a stage added with {@link #thenOrdered(String, Stage)} receives them
+ * again in the order of the source. The items that may be ahead of an ordered stage are limited too, so that a slow item
+ * cannot make the ones after it pile up while they wait for their turn.
+ *
+ * @param <T> the type of the items produced by the last stage
+ */
+public final class Pipeline<T> {
+
+	/**
+	 * A step of the pipeline
+	 *
+	 * @param <I> the type of the input items
+	 * @param <O> the type of the output items
+	 */
+	public interface Stage<I, O> {
+		/**
+		 * @return the item to pass to the next stage, or <code>null</code> to drop it
+		 * @throws Exception if the item cannot be processed. The pipeline is stopped
+		 */
+		@Nullable
+		O process(@NotNull I input) throws Exception;
+	}
+
+	/**
+	 * Statistics of a stage, updated while the pipeline runs
+	 */
+	public static final class StageStats {
+		@NotNull
+		private final String name;
+		private final int threads;
+		private final AtomicLong processed = new AtomicLong(), busyNanos = new AtomicLong();
+
+		private StageStats(@NotNull String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		@NotNull
+		@Contract(pure = true)
+		public String getName() {
+			return name;
+		}
+
+		@Contract(pure = true)
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return the number of items processed so far
+		 */
+		public long getProcessed() {
+			return processed.get();
+		}
+
+		/**
+		 * @return the time spent processing items, summed over all the threads of the stage
+		 */
+		public long getBusyNanos() {
+			return busyNanos.get();
+		}
+	}
+
+	private static final class StageDefinition {
+		@NotNull
+		private final Stage<Object, Object> stage;
+		@NotNull
+		private final StageStats stats;
+		/**
+		 * Whether the items are processed on virtual threads, {@link StageStats#threads} being the maximum number of items in progress
+		 */
+		private final boolean virtual;
+		/**
+		 * Whether the items are processed by one thread in the order of the source
+		 */
+		private final boolean ordered;
+
+		private StageDefinition(@NotNull Stage<Object, Object> stage, @NotNull StageStats stats, boolean virtual, boolean ordered) {
+			this.stage = stage;
+			this.stats = stats;
+			this.virtual = virtual;
+			this.ordered = ordered;
+		}
+
+		/**
+		 * @return the number of threads that take the items from the input queue, each needing an end marker
+		 */
+		private int getReaders() {
+			return virtual || ordered ? 1 : stats.threads;
+		}
+
+		/**
+		 * Processes an item and passes the result to the given queue. Dropped items are passed on empty, so that the
+		 * ordered stages know they won't arrive
+		 */
+		private void process(@NotNull Sequenced item, @Nullable BlockingQueue<Object> output) throws Exception {
+			Object result = null;
+			if (item.item != null) {
+				final long start = System.nanoTime();
+				result = stage.process(item.item);
+				stats.busyNanos.addAndGet(System.nanoTime() - start);
+				stats.processed.incrementAndGet();
+			}
+			if (output != null) {
+				output.put(result == item.item ? item : new Sequenced(item.sequence, result));
+			}
+		}
+	}
+
+	/**
+	 * An item with its position in the source
+	 */
+	private static final class Sequenced {
+		private final long sequence;
+		/**
+		 * The item, or <code>null</code> if it was dropped by a previous stage
+		 */
+		@Nullable
+		private final Object item;
+
+		private Sequenced(long sequence, @Nullable Object item) {
+			this.sequence = sequence;
+			this.item = item;
+		}
+	}
+
+	/**
+	 * Marks the end of the items in a queue
+	 */
+	private static final Object END = new Object();
+
+	@NotNull
+	private final Iterator<?> source;
+	private final int queueSize;
+	@NotNull
+	private final List<StageDefinition> stages;
+
+	private Pipeline(@NotNull Iterator<?> source, int queueSize, @NotNull List<StageDefinition> stages) {
+		this.source = source;
+		this.queueSize = queueSize;
+		this.stages = stages;
+	}
+
+	/**
+	 * @param source    the items to process, consumed by a dedicated thread
+	 * @param queueSize the capacity of each queue between two stages
+	 */
+	@NotNull
+	public static <T> Pipeline<T> from(@NotNull Iterator<? extends T> source, int queueSize) {
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException("queueSize <= 0");
+		}
+		return new Pipeline<>(source, queueSize, Collections.emptyList());
+	}
+
+	/**
+	 * @param name    the name of the stage, used for the threads and the statistics
+	 * @param threads the number of threads of the stage
+	 * @return a new pipeline with the given stage appended
+	 */
+	@NotNull
+	public <O> Pipeline<O> then(@NotNull String name, int threads, @NotNull Stage<? super T, ? extends O> stage) {
+		return then(name, threads, false, false, stage);
+	}
+
+	/**
+	 * Appends a stage with one thread that receives the items in the same order of the source, even if the previous stages
+	 * have more threads. The items that arrive early are kept until the ones before them have been processed
+	 *
+	 * @param name the name of the stage, used for the thread and the statistics
+	 * @return a new pipeline with the given stage appended
+	 */
+	@NotNull
+	public <O> Pipeline<O> thenOrdered(@NotNull String name, @NotNull Stage<? super T, ? extends O> stage) {
+		return then(name, 1, false, true, stage);
+	}
+
+	/**
+	 * Like {@link #then(String, int, Stage)}, but each item is processed on its own virtual thread. Useful for stages that
+	 * mostly wait on blocking I/O, where a high concurrency would need too many platform threads.
+	 *
+	 * @param name        the name of the stage, used for the threads and the statistics
+	 * @param concurrency the maximum number of items processed at the same time
+	 * @return a new pipeline with the given stage appended
+	 * @throws UnsupportedOperationException if the running JVM doesn't have virtual threads
+	 * @see VirtualThreads#isSupported()
+	 */
+	@NotNull
+	public <O> Pipeline<O> thenVirtual(@NotNull String name, int concurrency, @NotNull Stage<? super T, ? extends O> stage) {
+		if (!VirtualThreads.isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+		}
+		return then(name, concurrency, true, false, stage);
+	}
+
+	@NotNull
+	@SuppressWarnings("unchecked")
+	private <O> Pipeline<O> then(@NotNull String name, int threads, boolean virtual, boolean ordered, @NotNull Stage<? super T, ? extends O> stage) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads <= 0");
+		}
+		final List<StageDefinition> stages = new ArrayList<>(this.stages);
+		stages.add(new StageDefinition((Stage<Object, Object>) stage, new StageStats(name, threads), virtual, ordered));
+		return new Pipeline<>(source, queueSize, stages);
+	}
+
+	/**
+	 * @return the statistics of the stages, in order
+	 */
+	@NotNull
+	public List<StageStats> getStats() {
+		final List<StageStats> ret = new ArrayList<>(stages.size());
+		for (StageDefinition stage : stages) {
+			ret.add(stage.stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * Runs the pipeline until all the items have passed through all the stages. The items returned by the last stage are discarded.
+	 *
+	 * @throws PipelineException    if a stage fails. The remaining items are not processed
+	 * @throws InterruptedException if the calling thread is interrupted. The threads of the pipeline are interrupted too
+	 */
+	public void run() throws PipelineException, InterruptedException {
+		if (stages.isEmpty()) {
+			throw new IllegalStateException("No stages");
+		}
+		final List<BlockingQueue<Object>> queues = new ArrayList<>(stages.size());
+		for (int i = 0; i < stages.size(); i++) {
+			queues.add(new ArrayBlockingQueue<>(queueSize));
+		}
+		//The window of each ordered stage is acquired by the source or by the previous ordered stage when they pass
+		//an item on, and released when the ordered stage processes it
+		final List<Semaphore> windows = new ArrayList<>(stages.size());
+		int inFlight = 0;
+		for (StageDefinition stage : stages) {
+			if (stage.ordered) {
+				windows.add(new Semaphore(queueSize + inFlight));
+				inFlight = 0;
+			} else {
+				windows.add(null);
+				inFlight += stage.stats.threads;
+			}
+		}
+		final AtomicReference<PipelineException> error = new AtomicReference<>();
+		final List<Thread> threads = new ArrayList<>();
+		final Runnable abort = () -> {
+			synchronized (threads) {
+				for (Thread thread : threads) {
+					thread.interrupt();
+				}
+			}
+		};
+		final BiConsumer<String, Throwable> fail = (stage, e) -> {
+			if (error.compareAndSet(null, new PipelineException(stage, e))) {
+				abort.run();
+			}
+		};
+
+		synchronized (threads) {
+			threads.add(new Thread(() -> {
+				try {
+					final Semaphore window = nextWindow(windows, -1);
+					long sequence = 0;
+					while (source.hasNext()) {
+						final Object item = source.next();
+						if (window != null) {
+							window.acquire();
+						}
+						queues.get(0).put(new Sequenced(sequence++, item));
+					}
+					for (int i = 0; i < stages.get(0).getReaders(); i++) {
+						queues.get(0).put(END);
+					}
+				} catch (InterruptedException ignored) {
+				} catch (Throwable e) {
+					//Errors are reported too, otherwise the stages after this one would wait forever for the end marker
+					fail.accept("source", e);
+				}
+			}, "glhmg-source"));
+
+			for (int s = 0; s < stages.size(); s++) {
+				final StageDefinition stage = stages.get(s);
+				final BlockingQueue<Object> input = queues.get(s);
+				final BlockingQueue<Object> output = s + 1 < stages.size() ? queues.get(s + 1) : null;
+				final int nextReaders = s + 1 < stages.size() ? stages.get(s + 1).getReaders() : 0;
+				if (stage.virtual) {
+					threads.add(new Thread(() -> runVirtual(stage, input, output, nextReaders, fail), "glhmg-" + stage.stats.name + "-dispatcher"));
+					continue;
+				} else if (stage.ordered) {
+					final Semaphore window = windows.get(s), next = nextWindow(windows, s);
+					threads.add(new Thread(() -> runOrdered(stage, input, output, nextReaders, window, next, fail), "glhmg-" + stage.stats.name));
+					continue;
+				}
+				final AtomicInteger running = new AtomicInteger(stage.stats.threads);
+				for (int t = 0; t < stage.stats.threads; t++) {
+					threads.add(new Thread(() -> {
+						try {
+							Object item;
+							while ((item = input.take()) != END) {
+								stage.process((Sequenced) item, output);
+							}
+							//The last thread of the stage tells the next stage that there are no more items
+							if (running.decrementAndGet() == 0 && output != null) {
+								for (int i = 0; i < nextReaders; i++) {
+									output.put(END);
+								}
+							}
+						} catch (InterruptedException ignored) {
+						} catch (Throwable e) {
+							fail.accept(stage.stats.name, e);
+						}
+					}, "glhmg-" + stage.stats.name + "-" + t));
+				}
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			abort.run();
+			throw e;
+		}
+		final PipelineException exception = error.get();
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * @return the window of the first ordered stage after the given one, or <code>null</code> if there isn't one
+	 */
+	@Nullable
+	private static Semaphore nextWindow(@NotNull List<Semaphore> windows, int stage) {
+		for (int i = stage + 1; i < windows.size(); i++) {
+			if (windows.get(i) != null) {
+				return windows.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Takes the items of a virtual stage and starts a virtual thread for each of them, waiting when there are already
+	 * {@link StageStats#threads} items in progress
+	 */
+	private static void runVirtual(@NotNull StageDefinition stage, @NotNull BlockingQueue<Object> input, @Nullable BlockingQueue<Object> output, int nextReaders, @NotNull BiConsumer<String, Throwable> fail) {
+		final int concurrency = stage.stats.threads;
+		final Semaphore permits = new Semaphore(concurrency);
+		ExecutorService executor = null;
+		try {
+			executor = VirtualThreads.newThreadPerTaskExecutor("glhmg-" + stage.stats.name + "-v");
+			Object item;
+			while ((item = input.take()) != END) {
+				permits.acquire();
+				final Sequenced current = (Sequenced) item;
+				executor.execute(() -> {
+					try {
+						stage.process(current, output);
+					} catch (InterruptedException ignored) {
+					} catch (Throwable e) {
+						fail.accept(stage.stats.name, e);
+					} finally {
+						permits.release();
+					}
+				});
+			}
+			//All the permits are free only when all the items have been processed
+			permits.acquire(concurrency);
+			if (output != null) {
+				for (int i = 0; i < nextReaders; i++) {
+					output.put(END);
+				}
+			}
+		} catch (InterruptedException ignored) {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			//Virtual threads are not joined by run(), so wait here for the interrupted items to give back their permits
+			permits.acquireUninterruptibly(concurrency);
+		} catch (Throwable e) {
+			fail.accept(stage.stats.name, e);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Takes the items of an ordered stage, keeping the ones that arrive early until it's their turn.
+	 * The early items are at most the permits of <code>window</code>, since the item they wait for holds one of them
+	 *
+	 * @param window     released for each item processed
+	 * @param nextWindow the window of the next ordered stage, acquired for each item passed on
+	 */
+	private static void runOrdered(@NotNull StageDefinition stage, @NotNull BlockingQueue<Object> input, @Nullable BlockingQueue<Object> output, int nextReaders, @NotNull Semaphore window, @Nullable Semaphore nextWindow, @NotNull BiConsumer<String, Throwable> fail) {
+		final PriorityQueue<Sequenced> early = new PriorityQueue<>(Comparator.comparingLong(item -> item.sequence));
+		long next = 0;
+		try {
+			Object item;
+			while ((item = input.take()) != END) {
+				early.add((Sequenced) item);
+				while (!early.isEmpty() && early.peek().sequence == next) {
+					if (nextWindow != null) {
+						nextWindow.acquire();
+					}
+					stage.process(early.poll(), output);
+					window.release();
+					next++;
+				}
+			}
+			if (output != null) {
+				for (int i = 0; i < nextReaders; i++) {
+					output.put(END);
+				}
+			}
+		} catch (InterruptedException ignored) {
+		} catch (Throwable e) {
+			fail.accept(stage.stats.name, e);
+		}
+	}
+}
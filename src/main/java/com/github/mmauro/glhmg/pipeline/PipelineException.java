@@ -0,0 +1,25 @@
+package com.github.mmauro.glhmg.pipeline;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exception thrown when a stage of a {@link Pipeline} fails. The cause is the exception thrown by the stage
+ */
+public class PipelineException extends Exception {
+
+	@NotNull
+	private final String stage;
+
+	public PipelineException(@NotNull String stage, @NotNull Throwable cause) {
+		super("Error in stage " + stage + ": " + cause.getMessage(), cause);
+		this.stage = stage;
+	}
+
+	/**
+	 * @return the name of the stage that failed
+	 */
+	@NotNull
+	public String getStage() {
+		return stage;
+	}
+}
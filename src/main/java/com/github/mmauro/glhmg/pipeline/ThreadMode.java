@@ -0,0 +1,31 @@
+package com.github.mmauro.glhmg.pipeline;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The kinds of threads that can run a stage of a {@link Pipeline}
+ */
+public enum ThreadMode {
+	/**
+	 * A fixed number of platform threads
+	 *
+	 * @see Pipeline#then(String, int, Pipeline.Stage)
+	 */
+	PLATFORM,
+	/**
+	 * A virtual thread for each item, with a limit on the items in progress
+	 *
+	 * @see Pipeline#thenVirtual(String, int, Pipeline.Stage)
+	 */
+	VIRTUAL;
+
+	@NotNull
+	public static ThreadMode parse(@NotNull String str) {
+		for (ThreadMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(str)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Invalid thread mode: " + str);
+	}
+}
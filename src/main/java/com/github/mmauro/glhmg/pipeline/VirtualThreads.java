@@ -0,0 +1,80 @@
+package com.github.mmauro.glhmg.pipeline;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21+. The project is compiled for Java 8, so they are looked up by reflection
+ */
+public final class VirtualThreads {
+
+	@Nullable
+	private static final Method OF_VIRTUAL, NAME, FACTORY, NEW_THREAD_PER_TASK_EXECUTOR;
+	/**
+	 * Whether a virtual thread factory could be created. On Java 19 and 20 the methods exist, but without
+	 * <code>--enable-preview</code> they throw
+	 */
+	private static final boolean SUPPORTED;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null, newThreadPerTaskExecutor = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (ReflectiveOperationException ignored) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+
+		boolean supported = false;
+		if (ofVirtual != null) {
+			try {
+				factory.invoke(name.invoke(ofVirtual.invoke(null), "glhmg-probe", 0L));
+				supported = true;
+			} catch (ReflectiveOperationException | RuntimeException ignored) {
+			}
+		}
+		SUPPORTED = supported;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return <code>true</code> if the running JVM can create virtual threads
+	 */
+	@Contract(pure = true)
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/**
+	 * @param namePrefix the prefix of the names of the threads, followed by a counter
+	 * @return an executor that starts a new virtual thread for each task
+	 * @throws UnsupportedOperationException if the running JVM doesn't have virtual threads
+	 */
+	@NotNull
+	public static ExecutorService newThreadPerTaskExecutor(@NotNull String namePrefix) {
+		if (!SUPPORTED || OF_VIRTUAL == null || NAME == null || FACTORY == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+		}
+		try {
+			final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, FACTORY.invoke(builder));
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Unable to create virtual threads", e);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.WorldCoordinate;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Computes the center of the map of each frame as the average position of a window of frames, optionally moved
+ * ahead in the direction of travel, so that the camera follows the trend of the path instead of the GPS noise
+ * and looks where the path is going.
+ * <p>
+ * The frames are read lazily, keeping only the window in memory, and each center costs constant time thanks to running sums
+ */
+public final class CameraPath implements Iterator<CameraPath.Shot> {
+
+	/**
+	 * A frame together with the center of its map
+	 */
+	public static final class Shot {
+		@NotNull
+		private final Location frame;
+		@Nullable
+		private final WorldCoordinate center;
+
+		private Shot(@NotNull Location frame, @Nullable WorldCoordinate center) {
+			this.frame = frame;
+			this.center = center;
+		}
+
+		@NotNull
+		@Contract(pure = true)
+		public Location getFrame() {
+			return frame;
+		}
+
+		/**
+		 * @return the center of the map, or <code>null</code> if it's the frame itself
+		 */
+		@Nullable
+		@Contract(pure = true)
+		public WorldCoordinate getCenter() {
+			return center;
+		}
+	}
+
+	@NotNull
+	private final Iterator<Location> frames;
+	private final int halfWindow, lookAhead;
+	/**
+	 * The frames read but not returned yet, the first one having index <code>next</code>
+	 */
+	@NotNull
+	private final ArrayDeque<Location> pending = new ArrayDeque<>();
+	/**
+	 * The world coordinates of the frames in the window, the first one having index <code>windowStart</code>
+	 */
+	@NotNull
+	private final ArrayDeque<WorldCoordinate> window = new ArrayDeque<>();
+	private int next, read, windowStart;
+	private double sumX, sumY;
+
+	/**
+	 * @param frames    the frames
+	 * @param window    the number of frames averaged for each center, centered on the frame. Must be odd and positive,
+	 *                  <code>1</code> disables the smoothing
+	 * @param lookAhead the number of frames the window is moved forward
+	 */
+	public CameraPath(@NotNull Iterator<Location> frames, int window, int lookAhead) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window <= 0");
+		} else if (window % 2 == 0) {
+			throw new IllegalArgumentException("window must be odd");
+		} else if (lookAhead < 0) {
+			throw new IllegalArgumentException("lookAhead < 0");
+		}
+		this.frames = frames;
+		this.halfWindow = window / 2;
+		this.lookAhead = lookAhead;
+	}
+
+	/**
+	 * @return <code>true</code> if the centers are the frames themselves
+	 */
+	@Contract(pure = true)
+	private boolean isFixed() {
+		return halfWindow == 0 && lookAhead == 0;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !pending.isEmpty() || frames.hasNext();
+	}
+
+	@Override
+	public Shot next() {
+		if (isFixed()) {
+			return new Shot(frames.next(), null);
+		} else if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		//Reads up to the last frame of the window
+		final int last = next + lookAhead + halfWindow;
+		while (read <= last && frames.hasNext()) {
+			final Location frame = frames.next();
+			final WorldCoordinate position = new WorldCoordinate(frame.getWorldX(), frame.getWorldY());
+			pending.add(frame);
+			window.add(position);
+			sumX += position.getX();
+			sumY += position.getY();
+			read++;
+		}
+		//Drops the frames before the window, keeping at least the last one at the end of the path
+		final int first = Math.min(Math.max(0, next + lookAhead - halfWindow), read - 1);
+		while (windowStart < first) {
+			final WorldCoordinate position = window.remove();
+			sumX -= position.getX();
+			sumY -= position.getY();
+			windowStart++;
+		}
+
+		next++;
+		return new Shot(pending.remove(), new WorldCoordinate(sumX / window.size(), sumY / window.size()));
+	}
+}
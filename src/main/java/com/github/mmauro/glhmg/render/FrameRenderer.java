@@ -0,0 +1,73 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.MapParams;
+import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Produces the image of a frame and writes it to the output, in three steps that can be run by different stages of a pipeline:
+ * {@link #prepare(MapParams, PathParams, String)} (CPU bound), {@link #fetch(Object)} (I/O bound) and {@link #write(Object)}.
+ *
+ * @param <J> the type of the job that carries a frame through the steps
+ */
+public interface FrameRenderer<J> {
+
+	/**
+	 * Computes what is needed to obtain the frame centered in the location of the given {@link MapParams}
+	 *
+	 * @param name the name of the output file of the frame, as given by {@link OutputLayout#getName(int, Instant)}
+	 * @return the job to pass to {@link #fetch(Object)}, or <code>null</code> if the frame must be skipped
+	 */
+	@Nullable
+	J prepare(@NotNull MapParams mapParams, @NotNull PathParams pathParams, @NotNull String name) throws IOException;
+
+	/**
+	 * Obtains the image of the frame
+	 *
+	 * @throws IOException if an error occurs obtaining the map
+	 */
+	void fetch(@NotNull J job) throws IOException;
+
+	/**
+	 * @return the image obtained by {@link #fetch(Object)}
+	 * @throws IOException if the image cannot be decoded
+	 */
+	@NotNull
+	BufferedImage getImage(@NotNull J job) throws IOException;
+
+	/**
+	 * Replaces the image of the frame, so that {@link #write(Object)} writes the given one instead of the fetched one
+	 */
+	void setImage(@NotNull J job, @NotNull BufferedImage image);
+
+	/**
+	 * Writes the image of the frame to the output
+	 *
+	 * @throws IOException if an error occurs writing the image
+	 */
+	void write(@NotNull J job) throws IOException;
+
+	/**
+	 * @return <code>true</code> if {@link #prepare(MapParams, PathParams, String)} must be called from one thread and in order of time
+	 */
+	default boolean isSequential() {
+		return false;
+	}
+
+	/**
+	 * Runs all the steps for the given frame
+	 */
+	default void render(@NotNull MapParams mapParams, @NotNull PathParams pathParams, @NotNull String name) throws IOException {
+		final J job = prepare(mapParams, pathParams, name);
+		if (job != null) {
+			fetch(job);
+			write(job);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.Utils;
+import com.github.mmauro.glhmg.datastruct.MapParams;
+import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.render.output.ImageOutput;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+
+/**
+ * Downloads each frame, path included, from the Google Static Maps APIs
+ */
+public class GoogleStaticMapRenderer implements FrameRenderer<GoogleStaticMapRenderer.Job> {
+
+	public static final class Job {
+		@NotNull
+		private final String filenameWithoutExtension;
+		@NotNull
+		private final HashMap<String, String> parameters;
+		private byte[] image;
+		private String extension;
+		/**
+		 * The decoded image, and whether it has been changed so that it must be written instead of the downloaded bytes
+		 */
+		private BufferedImage decoded;
+		private boolean changed;
+
+		private Job(@NotNull String filenameWithoutExtension, @NotNull HashMap<String, String> parameters) {
+			this.filenameWithoutExtension = filenameWithoutExtension;
+			this.parameters = parameters;
+		}
+	}
+
+	@NotNull
+	private final String apiKey;
+	@NotNull
+	private final OutputLayout layout;
+	@NotNull
+	private final ImageOutput output;
+
+	public GoogleStaticMapRenderer(@NotNull String apiKey, @NotNull OutputLayout layout, @NotNull ImageOutput output) {
+		this.apiKey = apiKey;
+		this.layout = layout;
+		this.output = output;
+	}
+
+	/**
+	 * Computes the path
+	 */
+	@Override
+	public Job prepare(@NotNull MapParams mapParams, @NotNull PathParams pathParams, @NotNull String name) throws IOException {
+		if (layout.exists(name)) {
+			return null;
+		}
+		return new Job(name, Utils.getStaticMapParameters(mapParams, pathParams));
+	}
+
+	/**
+	 * Downloads the image
+	 */
+	@Override
+	public void fetch(@NotNull Job job) throws IOException {
+		final HttpURLConnection request = Utils.requestImage(apiKey, job.parameters);
+		job.extension = Utils.getImageExtension(request);
+		job.image = Utils.readFully(request.getInputStream());
+	}
+
+	@NotNull
+	@Override
+	public BufferedImage getImage(@NotNull Job job) throws IOException {
+		if (job.decoded == null) {
+			job.decoded = ImageIO.read(new ByteArrayInputStream(job.image));
+			if (job.decoded == null) {
+				throw new IOException("Unable to decode " + job.extension + " image " + job.filenameWithoutExtension);
+			}
+		}
+		return job.decoded;
+	}
+
+	@Override
+	public void setImage(@NotNull Job job, @NotNull BufferedImage image) {
+		job.decoded = image;
+		job.changed = true;
+	}
+
+	/**
+	 * Writes the downloaded image, converting it if another format was chosen or it has been changed
+	 */
+	@Override
+	public void write(@NotNull Job job) throws IOException {
+		if (job.changed) {
+			output.write(job.filenameWithoutExtension, job.decoded);
+		} else {
+			output.write(job.filenameWithoutExtension, job.image, job.extension);
+		}
+	}
+}
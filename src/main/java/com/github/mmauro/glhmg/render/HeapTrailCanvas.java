@@ -0,0 +1,44 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.render.tile.TileKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link TrailCanvas} that keeps each tile in a {@link BufferedImage} on the heap
+ */
+public class HeapTrailCanvas implements TrailCanvas {
+
+	@NotNull
+	private final Map<Long, BufferedImage> tiles = new HashMap<>();
+
+	@Nullable
+	@Override
+	public BufferedImage acquire(long tileX, long tileY, boolean create) {
+		final long index = TrailCanvas.getTileIndex(tileX, tileY);
+		if (create) {
+			return tiles.computeIfAbsent(index, k -> new BufferedImage(TileKey.TILE_SIZE, TileKey.TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+		} else {
+			return tiles.get(index);
+		}
+	}
+
+	@Override
+	public void release(long tileX, long tileY, @NotNull BufferedImage tile, boolean modified) {
+		//The tile is the stored one: nothing to do
+	}
+
+	@Override
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	@Override
+	public void close() {
+		tiles.clear();
+	}
+}
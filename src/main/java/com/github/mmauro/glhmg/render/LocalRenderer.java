@@ -0,0 +1,129 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.MapParams;
+import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.render.output.ImageOutput;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import com.github.mmauro.glhmg.render.tile.TileCompositor;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Renders the frames locally, composing slippy map tiles and drawing the {@link TrailLayer} over them
+ */
+public class LocalRenderer implements FrameRenderer<LocalRenderer.Job> {
+
+	public static final class Job {
+		@NotNull
+		private final String filenameWithoutExtension;
+		@NotNull
+		private final Viewport viewport;
+		private final int scale;
+		/**
+		 * The trail cropped to the viewport, drawn when the trail layer contained exactly the path up to this frame
+		 */
+		@NotNull
+		private final BufferedImage trail;
+		private BufferedImage image;
+
+		private Job(@NotNull String filenameWithoutExtension, @NotNull Viewport viewport, int scale, @NotNull BufferedImage trail) {
+			this.filenameWithoutExtension = filenameWithoutExtension;
+			this.viewport = viewport;
+			this.scale = scale;
+			this.trail = trail;
+		}
+	}
+
+	@NotNull
+	private final TileCompositor compositor;
+	@NotNull
+	private final TrailLayer trailLayer;
+	@NotNull
+	private final OutputLayout layout;
+	@NotNull
+	private final ImageOutput output;
+
+	public LocalRenderer(@NotNull TileCompositor compositor, @NotNull TrailLayer trailLayer, @NotNull OutputLayout layout, @NotNull ImageOutput output) {
+		this.compositor = compositor;
+		this.trailLayer = trailLayer;
+		this.layout = layout;
+		this.output = output;
+	}
+
+	/**
+	 * The {@link TrailLayer} is extended frame by frame
+	 */
+	@Override
+	public boolean isSequential() {
+		return true;
+	}
+
+	@NotNull
+	private static Graphics2D createGraphics(@NotNull BufferedImage image, int scale) {
+		final Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		graphics.scale(scale, scale);
+		return graphics;
+	}
+
+	/**
+	 * Extends the trail up to this frame and crops it
+	 */
+	@Override
+	public Job prepare(@NotNull MapParams mapParams, @NotNull PathParams pathParams, @NotNull String name) throws IOException {
+		//The trail must be extended even if the frame is skipped
+		trailLayer.extendTo(mapParams.getLocation());
+		if (layout.exists(name)) {
+			return null;
+		}
+
+		final Viewport viewport = Viewport.of(mapParams);
+		final int scale = mapParams.getScale();
+		final BufferedImage trail = new BufferedImage(viewport.getWidth() * scale, viewport.getHeight() * scale, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D graphics = createGraphics(trail, scale);
+		try {
+			trailLayer.draw(viewport, graphics);
+		} finally {
+			graphics.dispose();
+		}
+		return new Job(name, viewport, scale, trail);
+	}
+
+	/**
+	 * Composes the tiles, downloading them if needed, and draws the trail over them
+	 */
+	@Override
+	public void fetch(@NotNull Job job) throws IOException {
+		final BufferedImage image = new BufferedImage(job.trail.getWidth(), job.trail.getHeight(), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics = createGraphics(image, job.scale);
+		try {
+			compositor.compose(job.viewport, graphics);
+			graphics.scale(1d / job.scale, 1d / job.scale);
+			graphics.drawImage(job.trail, 0, 0, null);
+		} finally {
+			graphics.dispose();
+		}
+		job.image = image;
+	}
+
+	@NotNull
+	@Override
+	public BufferedImage getImage(@NotNull Job job) {
+		return job.image;
+	}
+
+	@Override
+	public void setImage(@NotNull Job job, @NotNull BufferedImage image) {
+		job.image = image;
+	}
+
+	@Override
+	public void write(@NotNull Job job) throws IOException {
+		output.write(job.filenameWithoutExtension, job.image);
+	}
+}
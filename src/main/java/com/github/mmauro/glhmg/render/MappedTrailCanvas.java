@@ -0,0 +1,137 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.render.tile.TileKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TrailCanvas} that keeps the ARGB pixels of the tiles off-heap, in a memory-mapped file.
+ * Tiles are allocated on first touch in chunks of {@link #TILES_PER_CHUNK}, so that a long trip at high zoom needs only a small heap:
+ * the operating system pages the pixels in and out of memory as needed.
+ */
+public class MappedTrailCanvas implements TrailCanvas {
+
+	private static final int TILE_PIXELS = TileKey.TILE_SIZE * TileKey.TILE_SIZE;
+	private static final int TILES_PER_CHUNK = 64;
+	private static final long CHUNK_BYTES = (long) TILES_PER_CHUNK * TILE_PIXELS * 4;
+
+	@NotNull
+	private final File file;
+	@NotNull
+	private final RandomAccessFile randomAccessFile;
+	@NotNull
+	private final FileChannel channel;
+	@NotNull
+	private final List<IntBuffer> chunks = new ArrayList<>();
+	@NotNull
+	private final Map<Long, Integer> slots = new HashMap<>();
+	/**
+	 * The only heap image, used to draw on a tile
+	 */
+	@NotNull
+	private final BufferedImage scratch = new BufferedImage(TileKey.TILE_SIZE, TileKey.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+	@NotNull
+	private final int[] scratchPixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+	private boolean acquired = false;
+
+	/**
+	 * @param file the file that will contain the pixels. It is deleted when the canvas is closed
+	 * @throws IOException if the file cannot be opened
+	 */
+	public MappedTrailCanvas(@NotNull File file) throws IOException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.randomAccessFile.setLength(0);
+		this.channel = randomAccessFile.getChannel();
+	}
+
+	/**
+	 * Creates a canvas backed by a temporary file
+	 */
+	@NotNull
+	public static MappedTrailCanvas createTemporary() throws IOException {
+		final File file = File.createTempFile("glhmg-trail", ".raster");
+		file.deleteOnExit();
+		return new MappedTrailCanvas(file);
+	}
+
+	@NotNull
+	private IntBuffer getSlotBuffer(int slot) throws IOException {
+		final int chunk = slot / TILES_PER_CHUNK;
+		while (chunks.size() <= chunk) {
+			//Mapping beyond the end of the file grows it: the new pixels are zeroes, so transparent
+			final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_BYTES, CHUNK_BYTES);
+			mapped.order(ByteOrder.nativeOrder());
+			chunks.add(mapped.asIntBuffer());
+		}
+		final IntBuffer buffer = chunks.get(chunk).duplicate();
+		buffer.position((slot % TILES_PER_CHUNK) * TILE_PIXELS);
+		return buffer;
+	}
+
+	@Nullable
+	@Override
+	public BufferedImage acquire(long tileX, long tileY, boolean create) throws IOException {
+		if (acquired) {
+			throw new IllegalStateException("The previous tile has not been released");
+		}
+		final long index = TrailCanvas.getTileIndex(tileX, tileY);
+		Integer slot = slots.get(index);
+		if (slot == null) {
+			if (!create) {
+				return null;
+			}
+			slot = slots.size();
+			slots.put(index, slot);
+		}
+		getSlotBuffer(slot).get(scratchPixels, 0, TILE_PIXELS);
+		acquired = true;
+		return scratch;
+	}
+
+	@Override
+	public void release(long tileX, long tileY, @NotNull BufferedImage tile, boolean modified) {
+		if (tile != scratch) {
+			throw new IllegalArgumentException("The tile has not been acquired from this canvas");
+		}
+		acquired = false;
+		if (modified) {
+			try {
+				getSlotBuffer(slots.get(TrailCanvas.getTileIndex(tileX, tileY))).put(scratchPixels, 0, TILE_PIXELS);
+			} catch (IOException e) {
+				//The slot has already been mapped by acquire
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@Override
+	public int getTileCount() {
+		return slots.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		chunks.clear();
+		slots.clear();
+		channel.close();
+		randomAccessFile.close();
+		//On some platforms the file cannot be deleted until the mapped buffers are garbage collected: deleteOnExit covers that case
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+}
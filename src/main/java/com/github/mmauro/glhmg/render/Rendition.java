@@ -0,0 +1,208 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.MapParams;
+import com.github.mmauro.glhmg.datastruct.MapSize;
+import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.datastruct.WorldCoordinate;
+import com.github.mmauro.glhmg.render.delta.DeltaEncoder;
+import com.github.mmauro.glhmg.render.delta.DeltaFrame;
+import com.github.mmauro.glhmg.render.hud.HudOverlay;
+import com.github.mmauro.glhmg.render.output.ImageOutput;
+import com.github.mmauro.glhmg.render.output.OutputLayout;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * A zoom and size at which the frames are rendered, together with the {@link FrameRenderer} that writes them.
+ * The same frames can be rendered in more renditions in a single run
+ *
+ * @param <J> the type of the jobs of the renderer
+ */
+public final class Rendition<J> {
+
+	/**
+	 * A frame of a rendition between the steps of the renderer
+	 */
+	public static final class Job<J> {
+		@NotNull
+		private final Rendition<J> rendition;
+		@NotNull
+		private final MapParams mapParams;
+		@NotNull
+		private final String name;
+		/**
+		 * The job of the renderer, or <code>null</code> if the frame is skipped
+		 */
+		@Nullable
+		private final J job;
+		@Nullable
+		private DeltaFrame delta;
+
+		private Job(@NotNull Rendition<J> rendition, @NotNull MapParams mapParams, @NotNull String name, @Nullable J job) {
+			this.rendition = rendition;
+			this.mapParams = mapParams;
+			this.name = name;
+			this.job = job;
+		}
+
+		/**
+		 * @return the name of the output file of the frame, without extension
+		 */
+		@NotNull
+		@Contract(pure = true)
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return <code>true</code> if the frame is not rendered, since its output already exists
+		 */
+		@Contract(pure = true)
+		public boolean isSkipped() {
+			return job == null;
+		}
+
+		/**
+		 * @see FrameRenderer#fetch(Object)
+		 */
+		public void fetch() throws IOException {
+			if (job != null) {
+				rendition.renderer.fetch(job);
+			}
+		}
+
+		/**
+		 * Draws the HUD of the rendition, if it has one
+		 */
+		public void drawHud() throws IOException {
+			final HudOverlay hud = rendition.hud;
+			if (hud != null && job != null) {
+				final FrameRenderer<J> renderer = rendition.renderer;
+				renderer.setImage(job, hud.draw(renderer.getImage(job), mapParams.getLocation()));
+			}
+		}
+
+		/**
+		 * Computes the difference from the previous frame of the rendition, if it is written as deltas.
+		 * Must be called by a single thread, in order of time
+		 */
+		public void encodeDelta() throws IOException {
+			final DeltaEncoder encoder = rendition.deltaEncoder;
+			if (encoder != null) {
+				if (job == null) {
+					encoder.reset();
+				} else {
+					delta = encoder.encode(rendition.renderer.getImage(job), Viewport.of(mapParams), mapParams.getScale());
+				}
+			}
+		}
+
+		/**
+		 * Writes the frame, as a delta if one was computed
+		 *
+		 * @see FrameRenderer#write(Object)
+		 */
+		public void write() throws IOException {
+			if (delta != null) {
+				delta.write(name, rendition.output);
+			} else if (job != null) {
+				rendition.renderer.write(job);
+			}
+		}
+	}
+
+	private final int zoom;
+	@NotNull
+	private final MapSize size;
+	private final int scale;
+	@NotNull
+	private final FrameRenderer<J> renderer;
+	@Nullable
+	private final DeltaEncoder deltaEncoder;
+	@Nullable
+	private final HudOverlay hud;
+	private final OutputLayout layout;
+	private final ImageOutput output;
+
+	public Rendition(int zoom, @NotNull MapSize size, int scale, @NotNull FrameRenderer<J> renderer) {
+		this(zoom, size, scale, renderer, null, null, null, null);
+	}
+
+	/**
+	 * @param deltaEncoder the encoder of the frames that are written as deltas from the previous ones
+	 * @param hud          the HUD drawn over the frames
+	 * @param layout       the layout of the frames of the renderer, where the deltas are written
+	 * @param output       the output used to write the deltas
+	 */
+	public Rendition(int zoom, @NotNull MapSize size, int scale, @NotNull FrameRenderer<J> renderer, @Nullable DeltaEncoder deltaEncoder, @Nullable HudOverlay hud, OutputLayout layout, ImageOutput output) {
+		this.zoom = zoom;
+		this.size = size;
+		this.scale = scale;
+		this.renderer = renderer;
+		this.deltaEncoder = deltaEncoder;
+		this.hud = hud;
+		this.layout = layout;
+		this.output = output;
+	}
+
+	/**
+	 * @return the name of the rendition with the given zoom and size, used as the name of its sub-directory (e.g. <code>z15_512x512</code>)
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static String getName(int zoom, @NotNull MapSize size) {
+		return "z" + zoom + "_" + size;
+	}
+
+	@Contract(pure = true)
+	public int getZoom() {
+		return zoom;
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public MapSize getSize() {
+		return size;
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public FrameRenderer<J> getRenderer() {
+		return renderer;
+	}
+
+	@Nullable
+	@Contract(pure = true)
+	public DeltaEncoder getDeltaEncoder() {
+		return deltaEncoder;
+	}
+
+	@Nullable
+	@Contract(pure = true)
+	public HudOverlay getHud() {
+		return hud;
+	}
+
+	@Contract(pure = true)
+	public OutputLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @param center the center of the map, or <code>null</code> to center it in the location
+	 * @param name   the name of the output file of the frame
+	 * @return the job of the frame of the given location, or <code>null</code> if the frame must be skipped.
+	 * When writing deltas, skipped frames are returned too, since the next frame cannot be a delta
+	 * @see FrameRenderer#prepare(MapParams, PathParams, String)
+	 */
+	@Nullable
+	public Job<J> prepare(@NotNull Location location, @Nullable WorldCoordinate center, @NotNull String name, @NotNull PathParams pathParams) throws IOException {
+		final MapParams mapParams = new MapParams(location, center, size, zoom, scale);
+		final J job = renderer.prepare(mapParams, pathParams, name);
+		return job == null && deltaEncoder == null ? null : new Job<>(this, mapParams, name, job);
+	}
+}
@@ -0,0 +1,39 @@
+package com.github.mmauro.glhmg.render;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sparse storage of the tiles of a {@link TrailLayer}. Only the touched tiles use memory.
+ * A tile obtained with {@link #acquire(long, long, boolean)} must be given back with {@link #release(long, long, BufferedImage, boolean)}
+ * before acquiring another one.
+ */
+public interface TrailCanvas extends Closeable {
+
+	/**
+	 * @param create <code>true</code> to create the tile, transparent, if it doesn't exist yet
+	 * @return the tile, or <code>null</code> if it doesn't exist and <code>create</code> is <code>false</code>
+	 * @throws IOException if the tile cannot be read or allocated
+	 */
+	@Nullable
+	BufferedImage acquire(long tileX, long tileY, boolean create) throws IOException;
+
+	/**
+	 * @param tile     the image returned by {@link #acquire(long, long, boolean)}
+	 * @param modified <code>true</code> if the tile has been drawn on
+	 */
+	void release(long tileX, long tileY, @NotNull BufferedImage tile, boolean modified);
+
+	/**
+	 * @return the number of tiles allocated
+	 */
+	int getTileCount();
+
+	static long getTileIndex(long tileX, long tileY) {
+		return (tileX << 32) | (tileY & 0xFFFFFFFFL);
+	}
+}
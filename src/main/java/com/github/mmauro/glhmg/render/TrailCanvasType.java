@@ -0,0 +1,41 @@
+package com.github.mmauro.glhmg.render;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * The available kinds of {@link TrailCanvas}
+ */
+public enum TrailCanvasType {
+	/**
+	 * @see HeapTrailCanvas
+	 */
+	HEAP,
+	/**
+	 * @see MappedTrailCanvas
+	 */
+	MAPPED;
+
+	@NotNull
+	public TrailCanvas create() throws IOException {
+		switch (this) {
+			case HEAP:
+				return new HeapTrailCanvas();
+			case MAPPED:
+				return MappedTrailCanvas.createTemporary();
+			default:
+				throw new IllegalStateException();
+		}
+	}
+
+	@NotNull
+	public static TrailCanvasType parse(@NotNull String str) {
+		for (TrailCanvasType type : values()) {
+			if (type.name().equalsIgnoreCase(str)) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Invalid trail canvas: " + str);
+	}
+}
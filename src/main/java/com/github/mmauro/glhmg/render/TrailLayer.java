@@ -0,0 +1,186 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.PathParams;
+import com.github.mmauro.glhmg.render.tile.TileKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Persistent raster of the path in world pixels at a given zoom, stored as sparse tiles in a {@link TrailCanvas}.
+ * Each frame strokes only the segments added since the previous one, so the raster work for a whole trip is linear.
+ * <p>
+ * The path is stroked opaque and the alpha of its color is applied only when the layer is drawn on a frame, so that
+ * overlapping segments don't get darker.
+ */
+public class TrailLayer {
+
+	private final int zoom;
+	@NotNull
+	private final Color opaqueColor;
+	private final float alpha;
+	@NotNull
+	private final BasicStroke stroke;
+	private final int margin;
+	@NotNull
+	private final TrailCanvas canvas;
+	@Nullable
+	private Location lastPoint;
+	private double lastX, lastY;
+
+	/**
+	 * @param canvas the storage of the tiles
+	 */
+	public TrailLayer(int zoom, @NotNull PathParams pathParams, @NotNull TrailCanvas canvas) {
+		this.zoom = zoom;
+		this.canvas = canvas;
+		final Color color = pathParams.getPathColor();
+		this.opaqueColor = new Color(color.getRed(), color.getGreen(), color.getBlue());
+		this.alpha = color.getAlpha() / 255f;
+		this.stroke = new BasicStroke(pathParams.getPathWeight(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+		//Room for the stroke width and the antialiasing
+		this.margin = pathParams.getPathWeight() / 2 + 2;
+	}
+
+	/**
+	 * @return the location of the original path that follows the given point, or <code>null</code> if there are none
+	 */
+	@Nullable
+	private static Location getNextOriginal(@NotNull Location point) {
+		if (point.hasNext()) {
+			return point.getNext();
+		} else if (point.hasPrevious() && point.getPrevious().hasNext() && point.getPrevious().getNext() != point) {
+			//Interpolated frames aren't linked as the next of their previous
+			return point.getPrevious().getNext();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Strokes the path from the last drawn point up to the given frame
+	 *
+	 * @throws IllegalStateException if the frame is before the last drawn one
+	 * @throws IOException           if the canvas cannot store the tiles
+	 */
+	public synchronized void extendTo(@NotNull Location frame) throws IOException {
+		final Path2D.Double path = new Path2D.Double();
+		final double[] bounds;
+		if (lastPoint == null) {
+			lastPoint = frame.getRoot();
+			lastX = Viewport.getWorldPixelX(lastPoint, zoom);
+			lastY = Viewport.getWorldPixelY(lastPoint, zoom);
+			//A single point is drawn as a dot
+			path.moveTo(lastX, lastY);
+			path.lineTo(lastX, lastY);
+		} else if (frame.compareTo(lastPoint) < 0) {
+			throw new IllegalStateException("Frames must be drawn in order of time");
+		} else {
+			path.moveTo(lastX, lastY);
+		}
+		bounds = new double[]{lastX, lastY, lastX, lastY};
+
+		Location original = getNextOriginal(lastPoint);
+		while (original != null && original.compareTo(frame) < 0) {
+			lineTo(path, bounds, original);
+			original = original.hasNext() ? original.getNext() : null;
+		}
+		if (frame.compareTo(lastPoint) > 0) {
+			lineTo(path, bounds, frame);
+		}
+		if (path.getCurrentPoint() != null) {
+			stroke(path, bounds);
+		}
+	}
+
+	private void lineTo(@NotNull Path2D.Double path, @NotNull double[] bounds, @NotNull Location location) {
+		lastX = Viewport.getWorldPixelX(location, zoom);
+		lastY = Viewport.getWorldPixelY(location, zoom);
+		lastPoint = location;
+		path.lineTo(lastX, lastY);
+		bounds[0] = Math.min(bounds[0], lastX);
+		bounds[1] = Math.min(bounds[1], lastY);
+		bounds[2] = Math.max(bounds[2], lastX);
+		bounds[3] = Math.max(bounds[3], lastY);
+	}
+
+	/**
+	 * Strokes the given path, in world pixels, on all the tiles touched by its bounds (minX, minY, maxX, maxY)
+	 */
+	private void stroke(@NotNull Path2D.Double path, @NotNull double[] bounds) throws IOException {
+		final int tileSize = TileKey.TILE_SIZE;
+		final long firstTileX = (long) Math.floor((bounds[0] - margin) / tileSize);
+		final long firstTileY = (long) Math.floor((bounds[1] - margin) / tileSize);
+		final long lastTileX = (long) Math.floor((bounds[2] + margin) / tileSize);
+		final long lastTileY = (long) Math.floor((bounds[3] + margin) / tileSize);
+		final Shape outline = stroke.createStrokedShape(path);
+
+		for (long tileY = firstTileY; tileY <= lastTileY; tileY++) {
+			for (long tileX = firstTileX; tileX <= lastTileX; tileX++) {
+				final double offsetX = tileX * tileSize, offsetY = tileY * tileSize;
+				if (!outline.intersects(offsetX, offsetY, tileSize, tileSize)) {
+					//The bounds touch the tile, but the path doesn't
+					continue;
+				}
+				final BufferedImage tile = Objects.requireNonNull(canvas.acquire(tileX, tileY, true));
+				final Graphics2D graphics = tile.createGraphics();
+				try {
+					graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+					//Without this, Java2D snaps the coordinates to the pixel grid, leaving kinks at every point
+					graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+					graphics.translate(-offsetX, -offsetY);
+					graphics.setColor(opaqueColor);
+					graphics.fill(outline);
+				} finally {
+					graphics.dispose();
+					canvas.release(tileX, tileY, tile, true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws the part of the layer inside the viewport. The graphics must be already scaled, and its origin is the top left corner of the viewport
+	 */
+	public synchronized void draw(@NotNull Viewport viewport, @NotNull Graphics2D graphics) throws IOException {
+		if (viewport.getZoom() != zoom) {
+			throw new IllegalArgumentException("Viewport zoom " + viewport.getZoom() + " is different from layer zoom " + zoom);
+		}
+		final int tileSize = TileKey.TILE_SIZE;
+		final long firstX = Math.floorDiv(viewport.getLeft(), tileSize);
+		final long lastX = Math.floorDiv(viewport.getLeft() + viewport.getWidth() - 1, tileSize);
+		final long firstY = Math.floorDiv(viewport.getTop(), tileSize);
+		final long lastY = Math.floorDiv(viewport.getTop() + viewport.getHeight() - 1, tileSize);
+
+		final Composite composite = graphics.getComposite();
+		graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+		try {
+			for (long y = firstY; y <= lastY; y++) {
+				for (long x = firstX; x <= lastX; x++) {
+					final BufferedImage tile = canvas.acquire(x, y, false);
+					if (tile != null) {
+						try {
+							graphics.drawImage(tile, (int) (x * tileSize - viewport.getLeft()), (int) (y * tileSize - viewport.getTop()), null);
+						} finally {
+							canvas.release(x, y, tile, false);
+						}
+					}
+				}
+			}
+		} finally {
+			graphics.setComposite(composite);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.github.mmauro.glhmg.render;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.MapParams;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The area of the world, in pixels at a given zoom, covered by a frame
+ */
+public final class Viewport {
+
+	private final int zoom;
+	private final long left, top;
+	private final int width, height;
+
+	public Viewport(int zoom, long left, long top, int width, int height) {
+		this.zoom = zoom;
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return the viewport centered in the location of the given params, in unscaled pixels
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public static Viewport of(@NotNull MapParams mapParams) {
+		final double zoomScale = getZoomScale(mapParams.getZoom());
+		final int width = (int) mapParams.getSize().getWidth(), height = (int) mapParams.getSize().getHeight();
+		return new Viewport(
+				mapParams.getZoom(),
+				Math.round(mapParams.getCenterX() * zoomScale - width / 2d),
+				Math.round(mapParams.getCenterY() * zoomScale - height / 2d),
+				width,
+				height
+		);
+	}
+
+	/**
+	 * @return the number of pixels of a world unit at the given zoom
+	 */
+	@Contract(pure = true)
+	public static double getZoomScale(int zoom) {
+		return (double) (1L << zoom);
+	}
+
+	/**
+	 * @return the x coordinate, in world pixels at the given zoom, of the given position
+	 */
+	@Contract(pure = true)
+	public static double getWorldPixelX(@NotNull Location location, int zoom) {
+		return location.getWorldX() * getZoomScale(zoom);
+	}
+
+	/**
+	 * @return the y coordinate, in world pixels at the given zoom, of the given position
+	 */
+	@Contract(pure = true)
+	public static double getWorldPixelY(@NotNull Location location, int zoom) {
+		return location.getWorldY() * getZoomScale(zoom);
+	}
+
+	@Contract(pure = true)
+	public int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @return the world pixel x of the left edge
+	 */
+	@Contract(pure = true)
+	public long getLeft() {
+		return left;
+	}
+
+	/**
+	 * @return the world pixel y of the top edge
+	 */
+	@Contract(pure = true)
+	public long getTop() {
+		return top;
+	}
+
+	@Contract(pure = true)
+	public int getWidth() {
+		return width;
+	}
+
+	@Contract(pure = true)
+	public int getHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,133 @@
+package com.github.mmauro.glhmg.render.delta;
+
+import com.github.mmauro.glhmg.OutUtils;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reconstructs the frames of a directory written with delta output.
+ * Usage: <code>DeltaDecoder &lt;input directory&gt; &lt;output directory&gt;</code>
+ */
+public final class DeltaDecoder {
+
+	private DeltaDecoder() {
+	}
+
+	/**
+	 * @param previous the previous frame
+	 * @param delta    the content of a delta file
+	 * @return the frame obtained applying the delta to the previous frame
+	 * @throws IOException if the delta is not valid or doesn't apply to the given frame
+	 */
+	@NotNull
+	public static BufferedImage apply(@NotNull BufferedImage previous, @NotNull byte[] delta) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+		if (in.readInt() != DeltaFrame.MAGIC) {
+			throw new IOException("Not a delta file");
+		} else if (in.readByte() != DeltaFrame.VERSION) {
+			throw new IOException("Unsupported delta version");
+		}
+		final int width = in.readInt(), height = in.readInt(), dx = in.readInt(), dy = in.readInt(), blockSize = in.readShort();
+		if (width != previous.getWidth() || height != previous.getHeight()) {
+			throw new IOException("The delta is " + width + "x" + height + ", the previous frame " + previous.getWidth() + "x" + previous.getHeight());
+		}
+		final short[] blocks = new short[in.readInt() * 2];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = in.readShort();
+		}
+
+		//Shifts the previous frame. The pixels that would come from outside of it are all in changed blocks
+		final int[] before = previous.getRGB(0, 0, width, height, null, 0, width);
+		final int[] pixels = new int[before.length];
+		for (int y = Math.max(0, -dy); y < Math.min(height, height - dy); y++) {
+			final int fromX = Math.max(0, -dx), toX = Math.min(width, width - dx);
+			System.arraycopy(before, (y + dy) * width + fromX + dx, pixels, y * width + fromX, toX - fromX);
+		}
+		if (blocks.length > 0) {
+			final BufferedImage atlas = ImageIO.read(in);
+			if (atlas == null) {
+				throw new IOException("Invalid atlas");
+			}
+			final int atlasColumns = atlas.getWidth() / blockSize;
+			for (int i = 0; i < blocks.length / 2; i++) {
+				final int x = blocks[i * 2] * blockSize, y = blocks[i * 2 + 1] * blockSize;
+				final int w = Math.min(blockSize, width - x), h = Math.min(blockSize, height - y);
+				atlas.getRGB((i % atlasColumns) * blockSize, (i / atlasColumns) * blockSize, w, h, pixels, y * width + x, width);
+			}
+		}
+
+		final BufferedImage ret = new BufferedImage(width, height, previous.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		ret.setRGB(0, 0, width, height, pixels, 0, width);
+		return ret;
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			OutUtils.err("Usage: DeltaDecoder <input directory> <output directory>", 1);
+			return;
+		}
+		final File inDir = new File(args[0]), outDir = new File(args[1]);
+		final File[] children = inDir.listFiles();
+		if (children == null) {
+			OutUtils.err("Unable to list " + inDir, 2);
+			return;
+		} else if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			OutUtils.err("Unable to create " + outDir, 2);
+			return;
+		}
+		//The names of the frames are their timestamps or numbers, and the names of the shard sub-directories are numbers,
+		//so they sort in order of time
+		final List<File> files = new ArrayList<>();
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				final File[] shard = child.listFiles(File::isFile);
+				if (shard != null) {
+					Arrays.sort(shard);
+					files.addAll(Arrays.asList(shard));
+				}
+			} else {
+				files.add(child);
+			}
+		}
+
+		BufferedImage frame = null;
+		int decoded = 0;
+		for (File file : files) {
+			final String name = file.getName();
+			final int dot = name.lastIndexOf('.');
+			final String filenameWithoutExtension = dot < 0 ? name : name.substring(0, dot);
+			try {
+				if (name.endsWith("." + DeltaFrame.EXTENSION)) {
+					if (frame == null) {
+						throw new IOException("Missing keyframe");
+					}
+					frame = apply(frame, Files.readAllBytes(file.toPath()));
+				} else {
+					frame = ImageIO.read(file);
+					if (frame == null) {
+						OutUtils.verbose("Skipping " + name);
+						continue;
+					}
+				}
+				ImageIO.write(frame, "png", new File(outDir, filenameWithoutExtension + ".png"));
+				OutUtils.standard("Decoded " + name);
+				decoded++;
+			} catch (IOException e) {
+				OutUtils.err("Unable to decode " + name + ": " + e.getMessage(), 3, e);
+				return;
+			}
+		}
+		OutUtils.standard("Frames decoded: " + decoded);
+	}
+}
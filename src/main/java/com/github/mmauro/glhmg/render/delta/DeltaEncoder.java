@@ -0,0 +1,151 @@
+package com.github.mmauro.glhmg.render.delta;
+
+import com.github.mmauro.glhmg.render.Viewport;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Computes the {@link DeltaFrame}s of the frames of a rendition, which must be given in order of time by a single thread.
+ * A full frame (keyframe) is needed at the start, every given number of frames, after a frame was skipped, and when most
+ * of the frame changed
+ */
+public final class DeltaEncoder {
+
+	/**
+	 * The side of the compared blocks, in pixels
+	 */
+	public static final int BLOCK_SIZE = 16;
+	/**
+	 * A frame where more than this fraction of the blocks changed is written as a keyframe
+	 */
+	private static final double MAX_CHANGED = 0.6;
+
+	private final int keyframeInterval;
+	@Nullable
+	private int[] previous;
+	private int width, height;
+	private long previousLeft, previousTop;
+	private int sinceKeyframe;
+	private int keyframes, deltas;
+
+	/**
+	 * @param keyframeInterval the maximum number of frames from a keyframe to the next one
+	 */
+	public DeltaEncoder(int keyframeInterval) {
+		if (keyframeInterval <= 0) {
+			throw new IllegalArgumentException("keyframeInterval <= 0");
+		}
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * @param image    the frame
+	 * @param viewport the area covered by the frame, used to compensate the motion from the previous frame
+	 * @param scale    the number of pixels of the image for a pixel of the viewport
+	 * @return the delta from the previous frame, or <code>null</code> if the frame must be written as a keyframe
+	 */
+	@Nullable
+	public DeltaFrame encode(@NotNull BufferedImage image, @NotNull Viewport viewport, int scale) {
+		final int w = image.getWidth(), h = image.getHeight();
+		final int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+		final long left = viewport.getLeft() * scale, top = viewport.getTop() * scale;
+		DeltaFrame ret = null;
+		if (previous != null && sinceKeyframe + 1 < keyframeInterval && w == width && h == height) {
+			ret = diff(pixels, previous, w, h, left - previousLeft, top - previousTop);
+		}
+
+		previous = pixels;
+		width = w;
+		height = h;
+		previousLeft = left;
+		previousTop = top;
+		if (ret == null) {
+			sinceKeyframe = 0;
+			keyframes++;
+		} else {
+			sinceKeyframe++;
+			deltas++;
+		}
+		return ret;
+	}
+
+	/**
+	 * Forgets the previous frame, so that the next one is a keyframe. To call when a frame is skipped
+	 */
+	public void reset() {
+		previous = null;
+	}
+
+	@Nullable
+	private static DeltaFrame diff(@NotNull int[] current, @NotNull int[] previous, int width, int height, long offsetX, long offsetY) {
+		if (Math.abs(offsetX) >= width || Math.abs(offsetY) >= height) {
+			return null;
+		}
+		final int dx = (int) offsetX, dy = (int) offsetY;
+		final int columns = (width + BLOCK_SIZE - 1) / BLOCK_SIZE, rows = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final short[] changed = new short[columns * rows * 2];
+		int count = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (isChanged(current, previous, width, height, dx, dy, column, row)) {
+					changed[count * 2] = (short) column;
+					changed[count * 2 + 1] = (short) row;
+					count++;
+				}
+			}
+		}
+		if (count > columns * rows * MAX_CHANGED) {
+			return null;
+		}
+
+		final int atlasColumns = Math.max(1, (int) Math.ceil(Math.sqrt(count)));
+		final int atlasRows = Math.max(1, (count + atlasColumns - 1) / atlasColumns);
+		final BufferedImage atlas = new BufferedImage(atlasColumns * BLOCK_SIZE, atlasRows * BLOCK_SIZE, BufferedImage.TYPE_INT_ARGB);
+		for (int i = 0; i < count; i++) {
+			final int x = changed[i * 2] * BLOCK_SIZE, y = changed[i * 2 + 1] * BLOCK_SIZE;
+			final int w = Math.min(BLOCK_SIZE, width - x), h = Math.min(BLOCK_SIZE, height - y);
+			atlas.setRGB((i % atlasColumns) * BLOCK_SIZE, (i / atlasColumns) * BLOCK_SIZE, w, h, current, y * width + x, width);
+		}
+		final short[] blocks = new short[count * 2];
+		System.arraycopy(changed, 0, blocks, 0, blocks.length);
+		return new DeltaFrame(width, height, dx, dy, BLOCK_SIZE, blocks, atlas);
+	}
+
+	/**
+	 * @return <code>true</code> if the block differs from the shifted previous frame, or if it would need pixels outside of it
+	 */
+	@Contract(pure = true)
+	private static boolean isChanged(@NotNull int[] current, @NotNull int[] previous, int width, int height, int dx, int dy, int column, int row) {
+		final int x0 = column * BLOCK_SIZE, y0 = row * BLOCK_SIZE;
+		final int x1 = Math.min(x0 + BLOCK_SIZE, width), y1 = Math.min(y0 + BLOCK_SIZE, height);
+		if (x0 + dx < 0 || x1 + dx > width || y0 + dy < 0 || y1 + dy > height) {
+			return true;
+		}
+		for (int y = y0; y < y1; y++) {
+			final int currentRow = y * width, previousRow = (y + dy) * width + dx;
+			for (int x = x0; x < x1; x++) {
+				if (current[currentRow + x] != previous[previousRow + x]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of frames written as keyframes
+	 */
+	public int getKeyframes() {
+		return keyframes;
+	}
+
+	/**
+	 * @return the number of frames written as deltas
+	 */
+	public int getDeltas() {
+		return deltas;
+	}
+}
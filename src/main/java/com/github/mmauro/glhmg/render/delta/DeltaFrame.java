@@ -0,0 +1,74 @@
+package com.github.mmauro.glhmg.render.delta;
+
+import com.github.mmauro.glhmg.render.output.ImageOutput;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The difference of a frame from the previous one: the previous frame is shifted by the offset between the two frame centers,
+ * and the blocks that still differ are stored in an atlas image.
+ * <p>
+ * File format (big endian): magic <code>GLHD</code>, version byte, width and height of the frame, x and y offset,
+ * block size (short), number of changed blocks, the column and row (shorts) of each block, and then the atlas as a PNG
+ * (absent if no block changed), with the blocks in the same order, row by row
+ */
+public final class DeltaFrame {
+
+	/**
+	 * The extension of the delta files
+	 */
+	public static final String EXTENSION = "delta";
+	static final int MAGIC = 0x474C4844;
+	static final byte VERSION = 1;
+
+	private final int width, height, dx, dy, blockSize;
+	@NotNull
+	private final short[] blocks;
+	@NotNull
+	private final BufferedImage atlas;
+
+	DeltaFrame(int width, int height, int dx, int dy, int blockSize, @NotNull short[] blocks, @NotNull BufferedImage atlas) {
+		this.width = width;
+		this.height = height;
+		this.dx = dx;
+		this.dy = dy;
+		this.blockSize = blockSize;
+		this.blocks = blocks;
+		this.atlas = atlas;
+	}
+
+	/**
+	 * @return the number of blocks that changed from the previous frame
+	 */
+	public int getChangedBlocks() {
+		return blocks.length / 2;
+	}
+
+	/**
+	 * Encodes the atlas and writes the delta file
+	 */
+	public void write(@NotNull String filenameWithoutExtension, @NotNull ImageOutput output) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(dx);
+			out.writeInt(dy);
+			out.writeShort(blockSize);
+			out.writeInt(getChangedBlocks());
+			for (short block : blocks) {
+				out.writeShort(block);
+			}
+			if (blocks.length > 0) {
+				out.write(output.encode(atlas));
+			}
+		}
+		output.write(filenameWithoutExtension + "." + EXTENSION, bytes.toByteArray());
+	}
+}
@@ -0,0 +1,164 @@
+package com.github.mmauro.glhmg.render.hud;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * The printable ASCII characters of a font rasterized once in a single coverage mask, so that drawing a text costs a
+ * blend of the pixels of each character instead of the layout and rasterization of the font
+ */
+public final class GlyphAtlas {
+
+	private static final char FIRST = ' ', LAST = '~';
+
+	/**
+	 * The coverage of the glyphs, one byte per pixel, row by row
+	 */
+	@NotNull
+	private final byte[] mask;
+	private final int width;
+	/**
+	 * The x of the slot of each glyph in the atlas and its advance. Each slot has a pixel of margin on both sides,
+	 * since antialiasing can draw outside of the advance
+	 */
+	@NotNull
+	private final int[] offsets, advances;
+	/**
+	 * The first and after last rows of each glyph that contain some coverage, so that the empty ones are skipped
+	 */
+	@NotNull
+	private final int[] tops, bottoms;
+	private final int height, ascent;
+
+	/**
+	 * @param font the font of the glyphs
+	 */
+	public GlyphAtlas(@NotNull Font font) {
+		final BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D measure = scratch.createGraphics();
+		final FontMetrics metrics = measure.getFontMetrics(font);
+		measure.dispose();
+
+		final int count = LAST - FIRST + 1;
+		offsets = new int[count];
+		advances = new int[count];
+		int width = 0;
+		for (int i = 0; i < count; i++) {
+			offsets[i] = width;
+			advances[i] = metrics.charWidth((char) (FIRST + i));
+			width += advances[i] + 2;
+		}
+		this.width = width;
+		height = metrics.getHeight();
+		ascent = metrics.getAscent();
+
+		final BufferedImage atlas = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		final Graphics2D graphics = atlas.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+		graphics.setFont(font);
+		graphics.setColor(Color.WHITE);
+		for (int i = 0; i < count; i++) {
+			graphics.drawString(String.valueOf((char) (FIRST + i)), offsets[i] + 1, ascent);
+		}
+		graphics.dispose();
+		mask = ((DataBufferByte) atlas.getRaster().getDataBuffer()).getData();
+
+		tops = new int[count];
+		bottoms = new int[count];
+		for (int i = 0; i < count; i++) {
+			int top = height, bottom = 0;
+			for (int row = 0; row < height; row++) {
+				for (int col = offsets[i]; col < offsets[i] + advances[i] + 2; col++) {
+					if (mask[row * width + col] != 0) {
+						top = Math.min(top, row);
+						bottom = row + 1;
+						break;
+					}
+				}
+			}
+			tops[i] = top;
+			bottoms[i] = bottom;
+		}
+	}
+
+	/**
+	 * @return the height of a line of text
+	 */
+	@Contract(pure = true)
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the width of the given text
+	 */
+	@Contract(pure = true)
+	public int getWidth(@NotNull CharSequence text) {
+		int width = 0;
+		for (int i = 0; i < text.length(); i++) {
+			width += advances[indexOf(text.charAt(i))];
+		}
+		return width;
+	}
+
+	/**
+	 * Draws the given text, with the top left corner of the line at the given coordinates, blending the pixels directly.
+	 * Characters not in the atlas are drawn as <code>?</code>
+	 *
+	 * @param image an image of type {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+	 * @param rgb   the color of the text
+	 * @throws IllegalArgumentException if the image is of another type
+	 */
+	public void draw(@NotNull BufferedImage image, @NotNull CharSequence text, int x, int y, int rgb) {
+		if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("Unsupported image type: " + image.getType());
+		}
+		final WritableRaster raster = image.getRaster();
+		final int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+		final int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		final int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+
+		for (int i = 0; i < text.length(); i++) {
+			final int index = indexOf(text.charAt(i));
+			//The slot starts a pixel before the origin of the glyph
+			final int left = x - 1;
+			final int fromX = Math.max(0, -left), toX = Math.min(advances[index] + 2, image.getWidth() - left);
+			final int fromY = Math.max(tops[index], -y), toY = Math.min(bottoms[index], image.getHeight() - y);
+			for (int row = fromY; row < toY; row++) {
+				final int maskRow = row * width + offsets[index], pixelRow = (y + row) * stride + left;
+				for (int col = fromX; col < toX; col++) {
+					final int alpha = mask[maskRow + col] & 0xFF;
+					if (alpha != 0) {
+						final int dst = pixels[pixelRow + col], inverse = 255 - alpha;
+						pixels[pixelRow + col] = (dst & 0xFF000000)
+								| div255(r * alpha + ((dst >> 16) & 0xFF) * inverse) << 16
+								| div255(g * alpha + ((dst >> 8) & 0xFF) * inverse) << 8
+								| div255(b * alpha + (dst & 0xFF) * inverse);
+					}
+				}
+			}
+			x += advances[index];
+		}
+	}
+
+	/**
+	 * @return the given value, between 0 and 255 * 255, divided by 255, without the division
+	 */
+	@Contract(pure = true)
+	private static int div255(int value) {
+		return (value * 0x8081) >>> 23;
+	}
+
+	@Contract(pure = true)
+	private static int indexOf(char c) {
+		return c >= FIRST && c <= LAST ? c - FIRST : '?' - FIRST;
+	}
+}
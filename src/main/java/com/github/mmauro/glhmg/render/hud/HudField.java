@@ -0,0 +1,74 @@
+package com.github.mmauro.glhmg.render.hud;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.TripStats;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * A line of the {@link HudOverlay}
+ */
+public enum HudField {
+	/**
+	 * The date and time of the frame, in the time zone of the output
+	 */
+	TIME {
+		@NotNull
+		@Override
+		public String format(@NotNull Location frame, @NotNull TripStats stats, @NotNull ZoneId zone) {
+			return TIME_FORMATTER.withZone(zone).format(frame.getTimestamp());
+		}
+	},
+	/**
+	 * The speed of the segment that contains the frame
+	 */
+	SPEED {
+		@NotNull
+		@Override
+		public String format(@NotNull Location frame, @NotNull TripStats stats, @NotNull ZoneId zone) {
+			return String.format(Locale.ROOT, "%.1f km/h", stats.getSpeed(frame) * 3.6);
+		}
+	},
+	/**
+	 * The distance travelled since the first location
+	 */
+	DISTANCE {
+		@NotNull
+		@Override
+		public String format(@NotNull Location frame, @NotNull TripStats stats, @NotNull ZoneId zone) {
+			return String.format(Locale.ROOT, "%.2f km", stats.getDistanceTo(frame) / 1000);
+		}
+	},
+	/**
+	 * The altitude gained since the first location
+	 */
+	CLIMB {
+		@NotNull
+		@Override
+		public String format(@NotNull Location frame, @NotNull TripStats stats, @NotNull ZoneId zone) {
+			return String.format(Locale.ROOT, "+%.0f m", stats.getAltitudeGainTo(frame));
+		}
+	};
+
+	private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	/**
+	 * @param zone the time zone of the dates and times
+	 * @return the text of the line for the given frame
+	 */
+	@NotNull
+	public abstract String format(@NotNull Location frame, @NotNull TripStats stats, @NotNull ZoneId zone);
+
+	@NotNull
+	public static HudField parse(@NotNull String str) {
+		for (HudField field : values()) {
+			if (field.name().equalsIgnoreCase(str)) {
+				return field;
+			}
+		}
+		throw new IllegalArgumentException("Invalid HUD field: " + str);
+	}
+}
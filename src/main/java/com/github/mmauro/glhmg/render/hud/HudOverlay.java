@@ -0,0 +1,79 @@
+package com.github.mmauro.glhmg.render.hud;
+
+import com.github.mmauro.glhmg.datastruct.Location;
+import com.github.mmauro.glhmg.datastruct.TripStats;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Draws the given {@link HudField}s in a box in the bottom left corner of the frames. It can be used by more threads
+ */
+public final class HudOverlay {
+
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+	@NotNull
+	private final List<HudField> fields;
+	@NotNull
+	private final TripStats stats;
+	@NotNull
+	private final ZoneId zone;
+	@NotNull
+	private final GlyphAtlas atlas;
+	private final int padding;
+
+	/**
+	 * @param fields the lines of the HUD, from the top
+	 * @param stats  the statistics of the locations the frames come from
+	 * @param zone   the time zone of the dates and times, the same of the names of the frames
+	 * @param scale  the scale of the frames, that multiplies the size of the text
+	 */
+	public HudOverlay(@NotNull List<HudField> fields, @NotNull TripStats stats, @NotNull ZoneId zone, int scale) {
+		this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+		this.stats = stats;
+		this.zone = zone;
+		this.atlas = new GlyphAtlas(new Font(Font.SANS_SERIF, Font.BOLD, 12 * scale));
+		this.padding = 4 * scale;
+	}
+
+	/**
+	 * Draws the HUD of the given frame
+	 *
+	 * @return the image with the HUD, that is the given one unless it had to be converted to a true color image
+	 */
+	@NotNull
+	public BufferedImage draw(@NotNull BufferedImage image, @NotNull Location frame) {
+		if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			//Blending the glyphs on palette images would quantize them
+			final BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			final Graphics2D graphics = converted.createGraphics();
+			graphics.drawImage(image, 0, 0, null);
+			graphics.dispose();
+			image = converted;
+		}
+
+		final String[] lines = new String[fields.size()];
+		int width = 0;
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = fields.get(i).format(frame, stats, zone);
+			width = Math.max(width, atlas.getWidth(lines[i]));
+		}
+		final int boxWidth = width + 2 * padding, boxHeight = lines.length * atlas.getHeight() + 2 * padding;
+		final int top = image.getHeight() - boxHeight;
+
+		final Graphics2D graphics = image.createGraphics();
+		graphics.setColor(BACKGROUND);
+		graphics.fillRect(0, top, boxWidth, boxHeight);
+		graphics.dispose();
+		for (int i = 0; i < lines.length; i++) {
+			atlas.draw(image, lines[i], padding, top + padding + i * atlas.getHeight(), 0xFFFFFF);
+		}
+		return image;
+	}
+}
@@ -0,0 +1,142 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A sink that streams the files into a single archive as they are written, so that a run doesn't need to be archived
+ * afterwards, reading every frame again.
+ * <p>
+ * Next to the archive a manifest lists the entries, with their size, in the order they were added. Each line is
+ * written only once its entry is completely in the archive, so that a run that was interrupted can be resumed:
+ * the entries in the manifest are kept and the rest of the archive is discarded
+ */
+public abstract class ArchiveSink implements OutputSink {
+
+	public static final String MANIFEST_EXTENSION = ".manifest";
+
+	@NotNull
+	protected final File archive;
+	@NotNull
+	private final File manifestFile;
+	/**
+	 * The size of each entry, in the order they were added
+	 */
+	@NotNull
+	private final Map<String, Integer> entries = new LinkedHashMap<>();
+	private BufferedWriter manifest;
+	private boolean closed;
+
+	protected ArchiveSink(@NotNull File archive) {
+		this.archive = archive;
+		this.manifestFile = new File(archive.getPath() + MANIFEST_EXTENSION);
+	}
+
+	/**
+	 * @return the entries listed in the manifest of a previous run, empty if there is no archive
+	 * @throws IOException if the archive exists but has no manifest, or the manifest cannot be read
+	 */
+	@NotNull
+	protected final Map<String, Integer> readManifest() throws IOException {
+		final Map<String, Integer> ret = new LinkedHashMap<>();
+		if (!archive.exists()) {
+			return ret;
+		} else if (!manifestFile.isFile()) {
+			throw new IOException(archive + " already exists and has no manifest to resume it");
+		}
+		try (final BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int tab = line.indexOf('\t');
+				if (tab < 0) {
+					throw new IOException("Invalid line in " + manifestFile + ": " + line);
+				}
+				try {
+					ret.put(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid line in " + manifestFile + ": " + line, e);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes the manifest with the entries kept from the previous run, and opens it to add the new ones.
+	 * Must be called once the archive is ready to receive the new entries
+	 */
+	protected final void startManifest(@NotNull Map<String, Integer> kept) throws IOException {
+		entries.putAll(kept);
+		manifest = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8);
+		for (Map.Entry<String, Integer> entry : kept.entrySet()) {
+			writeManifestLine(entry.getKey(), entry.getValue());
+		}
+		manifest.flush();
+	}
+
+	private void writeManifestLine(@NotNull String path, int size) throws IOException {
+		manifest.write(Integer.toString(size));
+		manifest.write('\t');
+		manifest.write(path);
+		manifest.write('\n');
+	}
+
+	/**
+	 * Adds the entry to the archive and then to the manifest. Entries are added in the order the calls arrive
+	 */
+	@Override
+	public final synchronized void write(@NotNull String path, @NotNull byte[] bytes) throws IOException {
+		if (closed) {
+			throw new IOException(archive + " is closed");
+		} else if (path.indexOf('\n') >= 0 || path.indexOf('\t') >= 0) {
+			throw new IOException("Invalid entry name " + path);
+		} else if (entries.containsKey(path)) {
+			throw new IOException("Entry " + path + " is already in " + archive);
+		}
+		writeEntry(path, bytes);
+		writeManifestLine(path, bytes.length);
+		manifest.flush();
+		entries.put(path, bytes.length);
+	}
+
+	@NotNull
+	@Override
+	public final synchronized Set<String> list() {
+		return new HashSet<>(entries.keySet());
+	}
+
+	/**
+	 * Completes the archive. Can be called more times
+	 */
+	@Override
+	public final synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			try {
+				finish();
+			} finally {
+				manifest.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes a complete entry, flushing it to the file
+	 */
+	protected abstract void writeEntry(@NotNull String path, @NotNull byte[] bytes) throws IOException;
+
+	/**
+	 * Writes the end of the archive and closes it
+	 */
+	protected abstract void finish() throws IOException;
+}
@@ -0,0 +1,62 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes each file in a directory, creating the sub-directories when they are first needed
+ */
+public final class DirectorySink implements OutputSink {
+
+	@NotNull
+	private final File root;
+	/**
+	 * The sub-directories known to exist, to avoid checking them for every file
+	 */
+	@NotNull
+	private final Set<String> directories = ConcurrentHashMap.newKeySet();
+
+	public DirectorySink(@NotNull File root) {
+		this.root = root;
+	}
+
+	@Override
+	public void write(@NotNull String path, @NotNull byte[] bytes) throws IOException {
+		final int slash = path.lastIndexOf('/');
+		if (slash > 0 && !directories.contains(path.substring(0, slash))) {
+			final File directory = new File(root, path.substring(0, slash));
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Unable to create directory " + directory);
+			}
+			directories.add(path.substring(0, slash));
+		}
+		Files.write(new File(root, path).toPath(), bytes);
+	}
+
+	@NotNull
+	@Override
+	public Set<String> list() throws IOException {
+		final Path rootPath = root.toPath();
+		if (!Files.isDirectory(rootPath)) {
+			return Collections.emptySet();
+		}
+		try (final Stream<Path> files = Files.walk(rootPath)) {
+			return files.filter(Files::isRegularFile)
+					.map(file -> rootPath.relativize(file).toString().replace(File.separatorChar, '/'))
+					.collect(Collectors.toSet());
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+}
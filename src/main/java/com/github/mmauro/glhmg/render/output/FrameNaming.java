@@ -0,0 +1,29 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How the output files of the frames are named
+ *
+ * @see OutputLayout
+ */
+public enum FrameNaming {
+	/**
+	 * The date and time of the frame, like <code>2017-07-14 03.10.30.000</code>
+	 */
+	TIMESTAMP,
+	/**
+	 * The zero-padded number of the frame, like <code>000042</code>, with an index of the timestamps in {@link OutputLayout#INDEX_FILENAME}
+	 */
+	SEQUENCE;
+
+	@NotNull
+	public static FrameNaming parse(@NotNull String str) {
+		for (FrameNaming naming : values()) {
+			if (naming.name().equalsIgnoreCase(str)) {
+				return naming;
+			}
+		}
+		throw new IllegalArgumentException("Invalid frame naming: " + str);
+	}
+}
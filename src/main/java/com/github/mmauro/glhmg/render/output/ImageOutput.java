@@ -0,0 +1,242 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes the frames in the chosen {@link OutputFormat} and writes them to an {@link OutputSink}, keeping count of the written bytes
+ * and of the time spent encoding. Can be used by more threads at once
+ */
+public final class ImageOutput {
+
+	@NotNull
+	private final OutputFormat format;
+	@NotNull
+	private final OutputSink sink;
+	private final AtomicLong images = new AtomicLong(), bytes = new AtomicLong(), encodeNanos = new AtomicLong();
+
+	public ImageOutput(@NotNull OutputFormat format, @NotNull OutputSink sink) {
+		this.format = format;
+		this.sink = sink;
+	}
+
+	/**
+	 * Encodes and writes the given image
+	 *
+	 * @param filenameWithoutExtension the path of the file in the sink, to which the extension of the format is appended
+	 */
+	public void write(@NotNull String filenameWithoutExtension, @NotNull BufferedImage image) throws IOException {
+		write(filenameWithoutExtension + "." + format.getExtension("png"), encode(image));
+	}
+
+	/**
+	 * Writes an image that is already encoded, re-encoding it if the format is not {@link OutputFormat.Type#ORIGINAL}
+	 *
+	 * @param extension the extension of the encoded image
+	 */
+	public void write(@NotNull String filenameWithoutExtension, @NotNull byte[] encoded, @NotNull String extension) throws IOException {
+		if (format.getType() == OutputFormat.Type.ORIGINAL) {
+			write(filenameWithoutExtension + "." + extension, encoded);
+		} else {
+			final BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+			if (image == null) {
+				throw new IOException("Unable to decode " + extension + " image " + filenameWithoutExtension);
+			}
+			write(filenameWithoutExtension, image);
+		}
+	}
+
+	/**
+	 * Writes the given bytes to the sink, counting them
+	 *
+	 * @param path the path of the file in the sink
+	 */
+	public void write(@NotNull String path, @NotNull byte[] encoded) throws IOException {
+		sink.write(path, encoded);
+		images.incrementAndGet();
+		bytes.addAndGet(encoded.length);
+	}
+
+	/**
+	 * @return the given image encoded in the format of this output
+	 */
+	@NotNull
+	public byte[] encode(@NotNull BufferedImage image) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			return doEncode(image);
+		} finally {
+			encodeNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	@NotNull
+	private byte[] doEncode(@NotNull BufferedImage image) throws IOException {
+		final String formatName;
+		final BufferedImage toWrite;
+		switch (format.getType()) {
+			case ORIGINAL:
+				formatName = "png";
+				toWrite = image;
+				break;
+			case PNG:
+				formatName = "png";
+				final BufferedImage indexed = toIndexed(image);
+				toWrite = indexed == null ? image : indexed;
+				break;
+			case JPEG:
+				formatName = "jpg";
+				toWrite = toOpaqueRgb(image);
+				break;
+			case WEBP:
+				formatName = "webp";
+				toWrite = image;
+				break;
+			default:
+				throw new IllegalStateException();
+		}
+
+		final Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(formatName);
+		if (!writers.hasNext()) {
+			throw new IOException("No encoder available for " + formatName);
+		}
+		final ImageWriter writer = writers.next();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (final ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(toWrite, null, null), format.getType() == OutputFormat.Type.ORIGINAL ? null : getWriteParam(writer));
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	@Nullable
+	private ImageWriteParam getWriteParam(@NotNull ImageWriter writer) {
+		final ImageWriteParam param = writer.getDefaultWriteParam();
+		if (!param.canWriteCompressed()) {
+			return null;
+		}
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		final String[] types = param.getCompressionTypes();
+		if (types != null && types.length > 0) {
+			//Plugins with more compression types (e.g. WebP) need one to be chosen: lossy if there's a quality, lossless otherwise
+			final String wanted = format.getQuality() >= 0 ? "lossy" : "lossless";
+			String type = types[0];
+			for (String t : types) {
+				if (t.toLowerCase().contains(wanted)) {
+					type = t;
+				}
+			}
+			param.setCompressionType(type);
+		}
+		if (format.getType() == OutputFormat.Type.PNG) {
+			//For PNG the quality is the inverse of the deflate level, so 0 is the best compression
+			param.setCompressionQuality(0f);
+		} else if (format.getQuality() >= 0) {
+			param.setCompressionQuality(format.getQuality() / 100f);
+		}
+		return param;
+	}
+
+	/**
+	 * @return the image with a palette, or <code>null</code> if it has more than 256 colors
+	 */
+	@Nullable
+	private static BufferedImage toIndexed(@NotNull BufferedImage image) {
+		final int width = image.getWidth(), height = image.getHeight();
+		final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		//Open addressing table from color to palette index
+		final int[] colors = new int[1024], indexes = new int[1024];
+		final boolean[] used = new boolean[1024];
+		final int[] palette = new int[256];
+		final byte[] indexed = new byte[pixels.length];
+		int paletteSize = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			final int color = pixels[i];
+			int slot = (color * 0x9E3779B1) >>> 22;
+			while (used[slot] && colors[slot] != color) {
+				slot = (slot + 1) & 1023;
+			}
+			if (!used[slot]) {
+				if (paletteSize == palette.length) {
+					return null;
+				}
+				used[slot] = true;
+				colors[slot] = color;
+				indexes[slot] = paletteSize;
+				palette[paletteSize++] = color;
+			}
+			indexed[i] = (byte) indexes[slot];
+		}
+
+		final IndexColorModel colorModel = new IndexColorModel(8, paletteSize, palette, 0, true, -1, DataBuffer.TYPE_BYTE);
+		final BufferedImage ret = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+		final WritableRaster raster = ret.getRaster();
+		raster.setDataElements(0, 0, width, height, indexed);
+		return ret;
+	}
+
+	/**
+	 * JPEG has no alpha channel, so translucent images are drawn over white
+	 */
+	@NotNull
+	private static BufferedImage toOpaqueRgb(@NotNull BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			return image;
+		}
+		final BufferedImage ret = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics = ret.createGraphics();
+		try {
+			graphics.drawImage(image, 0, 0, Color.WHITE, null);
+		} finally {
+			graphics.dispose();
+		}
+		return ret;
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public OutputFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the number of images written so far
+	 */
+	public long getImages() {
+		return images.get();
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return the time spent encoding, summed over all the threads
+	 */
+	public long getEncodeNanos() {
+		return encodeNanos.get();
+	}
+}
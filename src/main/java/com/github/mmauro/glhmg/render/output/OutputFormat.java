@@ -0,0 +1,111 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The format of the written images, in the form <code>type[:quality]</code>, e.g. <code>png</code> or <code>jpg:85</code>
+ */
+public final class OutputFormat {
+
+	public enum Type {
+		/**
+		 * The images are written as received from the Google Static Maps APIs, or as PNG when rendered locally
+		 */
+		ORIGINAL(null),
+		/**
+		 * PNG with the maximum compression, using a palette when the image has at most 256 colors. Lossless
+		 */
+		PNG("png"),
+		/**
+		 * JPEG with the given quality
+		 */
+		JPEG("jpg"),
+		/**
+		 * WebP, lossy with the given quality or lossless otherwise. Needs an ImageIO WebP plugin on the classpath
+		 */
+		WEBP("webp");
+
+		private final String extension;
+
+		Type(String extension) {
+			this.extension = extension;
+		}
+	}
+
+	public static final OutputFormat ORIGINAL = new OutputFormat(Type.ORIGINAL, -1);
+
+	@NotNull
+	private final Type type;
+	private final int quality;
+
+	/**
+	 * @param quality the quality, between 0 and 100, or -1 to use the default of the format
+	 */
+	public OutputFormat(@NotNull Type type, int quality) {
+		if (quality < -1 || quality > 100) {
+			throw new IllegalArgumentException("quality must be between 0 and 100");
+		} else if (quality >= 0 && (type == Type.ORIGINAL || type == Type.PNG)) {
+			throw new IllegalArgumentException(type.name().toLowerCase() + " has no quality");
+		}
+		this.type = type;
+		this.quality = quality;
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the quality, between 0 and 100, or -1 to use the default of the format
+	 */
+	@Contract(pure = true)
+	public int getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return the extension of the written files, or the given one for {@link Type#ORIGINAL}
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public String getExtension(@NotNull String original) {
+		return type.extension == null ? original : type.extension;
+	}
+
+	/**
+	 * @return <code>true</code> if ImageIO can write this format
+	 */
+	public boolean isAvailable() {
+		return type.extension == null || ImageIO.getImageWritersBySuffix(type.extension).hasNext();
+	}
+
+	@NotNull
+	public static OutputFormat parse(@NotNull String str) throws ParseException {
+		final String[] split = str.split(":", 2);
+		Type type = null;
+		for (Type t : Type.values()) {
+			if (t.name().equalsIgnoreCase(split[0]) || split[0].equalsIgnoreCase(t.extension)) {
+				type = t;
+			}
+		}
+		if (type == null) {
+			throw new ParseException("Invalid output format: " + split[0]);
+		}
+		try {
+			return new OutputFormat(type, split.length == 2 ? Integer.parseInt(split[1]) : -1);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException("Invalid output format " + str + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return type.name().toLowerCase() + (quality >= 0 ? ":" + quality : "");
+	}
+}
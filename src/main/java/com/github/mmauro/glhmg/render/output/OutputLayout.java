@@ -0,0 +1,218 @@
+package com.github.mmauro.glhmg.render.output;
+
+import com.github.mmauro.glhmg.OutUtils;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides the names of the output files of the frames of a rendition in the {@link OutputSink}, optionally sharding them
+ * in sub-directories of a fixed number of frames, so that no directory grows too big.
+ * <p>
+ * Names are built in a reused buffer without formatters, since {@link #getName(int, Instant)} is called for every frame.
+ * It must be called by a single thread, in order of frame, while {@link #exists(String)} can be called by any thread
+ */
+public final class OutputLayout implements Closeable {
+
+	/**
+	 * The name of the file that maps the frame numbers to their timestamps, written with {@link FrameNaming#SEQUENCE}
+	 */
+	public static final String INDEX_FILENAME = "frames.csv";
+
+	@NotNull
+	private final OutputSink sink;
+	@NotNull
+	private final String prefix;
+	@NotNull
+	private final FrameNaming naming;
+	@NotNull
+	private final ZoneRules zoneRules;
+	private final int shardSize, frameDigits, shardDigits;
+	@NotNull
+	private final char[] buffer;
+	@Nullable
+	private final BufferedWriter index;
+	/**
+	 * The paths of the files in the sink when it was first checked, without extensions
+	 */
+	private Set<String> existing;
+
+	/**
+	 * @param sink      where the frames are written
+	 * @param prefix    the path of the frames of the rendition in the sink, empty or ending with <code>/</code>
+	 * @param directory the directory of the rendition on disk, where the index is written
+	 * @param naming    how the frames are named
+	 * @param zone      the time zone of the timestamps in the names
+	 * @param shardSize the number of frames in each sub-directory, or <code>0</code> to write all of them in the directory
+	 * @param frames    the number of frames, used for the padding
+	 * @throws IOException if the index cannot be created
+	 */
+	public OutputLayout(@NotNull OutputSink sink, @NotNull String prefix, @NotNull File directory, @NotNull FrameNaming naming, @NotNull ZoneId zone, int shardSize, int frames) throws IOException {
+		if (shardSize < 0) {
+			throw new IllegalArgumentException("shardSize < 0");
+		}
+		this.sink = sink;
+		this.prefix = prefix;
+		this.buffer = new char[prefix.length() + 64];
+		prefix.getChars(0, prefix.length(), buffer, 0);
+		this.naming = naming;
+		this.zoneRules = zone.getRules();
+		this.shardSize = shardSize;
+		this.frameDigits = Math.max(6, digits(frames - 1));
+		this.shardDigits = shardSize == 0 ? 0 : Math.max(3, digits((frames - 1) / shardSize));
+		if (naming == FrameNaming.SEQUENCE) {
+			index = Files.newBufferedWriter(new File(directory, INDEX_FILENAME).toPath(), StandardCharsets.UTF_8);
+			index.write("frame,timestamp\n");
+		} else {
+			index = null;
+		}
+	}
+
+	/**
+	 * Names a frame, adding it to the index if needed
+	 *
+	 * @param frame     the number of the frame, starting from zero
+	 * @param timestamp the timestamp of the frame
+	 * @return the path of the file in the sink, without extension
+	 * @throws IOException if the index cannot be written
+	 */
+	@NotNull
+	public String getName(int frame, @NotNull Instant timestamp) throws IOException {
+		int length = prefix.length();
+		if (shardSize > 0) {
+			length = appendPadded(buffer, length, frame / shardSize, shardDigits);
+			buffer[length++] = '/';
+		}
+		final int nameStart = length;
+		if (naming == FrameNaming.SEQUENCE) {
+			length = appendPadded(buffer, length, frame, frameDigits);
+		} else {
+			length = appendTimestamp(buffer, length, timestamp);
+		}
+		if (index != null) {
+			index.write(buffer, nameStart, length - nameStart);
+			index.write(',');
+			index.write(timestamp.toString());
+			index.write('\n');
+		}
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * @param name a name returned by {@link #getName(int, Instant)}
+	 * @return <code>true</code> if a file with the given name and any extension already existed. In this case a warning is printed
+	 * @throws IOException if the sink cannot be listed
+	 */
+	public boolean exists(@NotNull String name) throws IOException {
+		if (getExisting().contains(name)) {
+			OutUtils.warn("File " + name + ".* already exists, skipping");
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Lists the sink once instead of for every frame
+	 */
+	@NotNull
+	private synchronized Set<String> getExisting() throws IOException {
+		if (existing == null) {
+			existing = new HashSet<>();
+			for (String path : sink.list()) {
+				if (path.startsWith(prefix)) {
+					existing.add(removeExtension(path));
+				}
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Flushes the index
+	 */
+	@Override
+	public void close() throws IOException {
+		if (index != null) {
+			index.close();
+		}
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	private static String removeExtension(@NotNull String name) {
+		final int dot = name.lastIndexOf('.');
+		return dot < 0 ? name : name.substring(0, dot);
+	}
+
+	@Contract(pure = true)
+	private static int digits(int value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	/**
+	 * Writes the given non negative value, left padded with zeros
+	 *
+	 * @return the new length
+	 */
+	private static int appendPadded(@NotNull char[] buffer, int length, long value, int digits) {
+		for (int i = length + digits - 1; i >= length; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return length + digits;
+	}
+
+	/**
+	 * Writes the timestamp as <code>yyyy-MM-dd HH.mm.ss.SSS</code> in the time zone of the layout
+	 *
+	 * @return the new length
+	 */
+	private int appendTimestamp(@NotNull char[] buffer, int length, @NotNull Instant timestamp) {
+		final long seconds = timestamp.getEpochSecond() + zoneRules.getOffset(timestamp).getTotalSeconds();
+		final long days = Math.floorDiv(seconds, 86400);
+		final int secondOfDay = (int) Math.floorMod(seconds, 86400);
+
+		//Civil date from the days since the epoch, with eras of 400 years starting on March 1st
+		final long z = days + 719468;
+		final long era = Math.floorDiv(z, 146097);
+		final int dayOfEra = (int) (z - era * 146097);
+		final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		length = appendPadded(buffer, length, year, 4);
+		buffer[length++] = '-';
+		length = appendPadded(buffer, length, month, 2);
+		buffer[length++] = '-';
+		length = appendPadded(buffer, length, day, 2);
+		buffer[length++] = ' ';
+		length = appendPadded(buffer, length, secondOfDay / 3600, 2);
+		buffer[length++] = '.';
+		length = appendPadded(buffer, length, secondOfDay / 60 % 60, 2);
+		buffer[length++] = '.';
+		length = appendPadded(buffer, length, secondOfDay % 60, 2);
+		buffer[length++] = '.';
+		return appendPadded(buffer, length, timestamp.getNano() / 1_000_000, 3);
+	}
+}
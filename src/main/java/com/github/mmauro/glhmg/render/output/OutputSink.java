@@ -0,0 +1,28 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Where the encoded frames are stored: a directory or an archive. Can be used by more threads at once
+ *
+ * @see OutputSinkType
+ */
+public interface OutputSink extends Closeable {
+
+	/**
+	 * Stores a file
+	 *
+	 * @param path the path of the file, relative to the root of the sink and separated by <code>/</code>
+	 */
+	void write(@NotNull String path, @NotNull byte[] bytes) throws IOException;
+
+	/**
+	 * @return the paths of the files already stored, including the ones stored by previous runs
+	 */
+	@NotNull
+	Set<String> list() throws IOException;
+}
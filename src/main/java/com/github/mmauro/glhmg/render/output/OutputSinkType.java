@@ -0,0 +1,57 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The available kinds of {@link OutputSink}
+ */
+public enum OutputSinkType {
+	/**
+	 * @see DirectorySink
+	 */
+	DIRECTORY,
+	/**
+	 * @see TarSink
+	 */
+	TAR,
+	/**
+	 * A {@link ZipSink} that stores the entries uncompressed, since images are already compressed
+	 */
+	ZIP,
+	/**
+	 * A {@link ZipSink} that deflates the entries
+	 */
+	ZIP_DEFLATED;
+
+	/**
+	 * @param directory the output directory, which contains the archive for the archive sinks
+	 */
+	@NotNull
+	public OutputSink create(@NotNull File directory) throws IOException {
+		switch (this) {
+			case DIRECTORY:
+				return new DirectorySink(directory);
+			case TAR:
+				return new TarSink(new File(directory, "frames.tar"));
+			case ZIP:
+				return new ZipSink(new File(directory, "frames.zip"), false);
+			case ZIP_DEFLATED:
+				return new ZipSink(new File(directory, "frames.zip"), true);
+			default:
+				throw new IllegalStateException();
+		}
+	}
+
+	@NotNull
+	public static OutputSinkType parse(@NotNull String str) {
+		for (OutputSinkType type : values()) {
+			if (type.name().replace('_', '-').equalsIgnoreCase(str)) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Invalid output sink: " + str);
+	}
+}
@@ -0,0 +1,121 @@
+package com.github.mmauro.glhmg.render.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streams the files into an uncompressed POSIX (ustar) tar archive.
+ * <p>
+ * Tar has no central directory, so resuming only needs to cut the archive after the last entry of the manifest
+ */
+public final class TarSink extends ArchiveSink {
+
+	private static final int BLOCK = 512;
+
+	@NotNull
+	private final OutputStream out;
+	@NotNull
+	private final byte[] header = new byte[BLOCK];
+
+	public TarSink(@NotNull File archive) throws IOException {
+		super(archive);
+		final Map<String, Integer> previous = readManifest();
+		long length = 0;
+		for (int size : previous.values()) {
+			length += BLOCK + padded(size);
+		}
+		final FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() < length) {
+				throw new IOException(archive + " is shorter than its manifest");
+			}
+			//Discards the entry that was being written, or the end of the archive
+			channel.truncate(length);
+			channel.position(length);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+		startManifest(previous);
+	}
+
+	private static long padded(long size) {
+		return (size + BLOCK - 1) / BLOCK * BLOCK;
+	}
+
+	@Override
+	protected void writeEntry(@NotNull String path, @NotNull byte[] bytes) throws IOException {
+		final byte[] name = path.getBytes(StandardCharsets.UTF_8);
+		Arrays.fill(header, (byte) 0);
+		if (name.length <= 100) {
+			System.arraycopy(name, 0, header, 0, name.length);
+		} else {
+			//Longer names are split on a slash between the prefix (155 bytes) and the name (100 bytes)
+			int split = -1;
+			for (int i = Math.min(name.length - 1, 155); i >= name.length - 101 && i > 0; i--) {
+				if (name[i] == '/') {
+					split = i;
+					break;
+				}
+			}
+			if (split < 0) {
+				throw new IOException("Entry name too long for tar: " + path);
+			}
+			System.arraycopy(name, split + 1, header, 0, name.length - split - 1);
+			System.arraycopy(name, 0, header, 345, split);
+		}
+		writeOctal(0644, 100, 8);
+		writeOctal(0, 108, 8);
+		writeOctal(0, 116, 8);
+		writeOctal(bytes.length, 124, 12);
+		writeOctal(System.currentTimeMillis() / 1000, 136, 12);
+		header[156] = '0';
+		System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+		//The checksum is computed with its own field filled with spaces
+		Arrays.fill(header, 148, 156, (byte) ' ');
+		int checksum = 0;
+		for (byte b : header) {
+			checksum += b & 0xFF;
+		}
+		writeOctal(checksum, 148, 7);
+
+		out.write(header);
+		out.write(bytes);
+		final int padding = (int) (padded(bytes.length) - bytes.length);
+		if (padding > 0) {
+			out.write(new byte[padding]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the value as zero padded octal digits, followed by a NUL, in a field of the given length
+	 */
+	private void writeOctal(long value, int offset, int length) {
+		header[offset + length - 1] = 0;
+		for (int i = offset + length - 2; i >= offset; i--) {
+			header[i] = (byte) ('0' + (value & 7));
+			value >>>= 3;
+		}
+	}
+
+	@Override
+	protected void finish() throws IOException {
+		try {
+			out.write(new byte[2 * BLOCK]);
+		} finally {
+			out.close();
+		}
+	}
+}
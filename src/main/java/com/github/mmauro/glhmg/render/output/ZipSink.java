@@ -0,0 +1,119 @@
+package com.github.mmauro.glhmg.render.output;
+
+import com.github.mmauro.glhmg.OutUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams the files into a zip archive, either stored or deflated. Zip64 is used when needed, so there's no limit of entries.
+ * <p>
+ * The central directory of a zip is written only when it is closed, so an interrupted archive is resumed by copying
+ * the entries of its manifest into a new one
+ */
+public final class ZipSink extends ArchiveSink {
+
+	@NotNull
+	private final ZipOutputStream out;
+	private final boolean deflate;
+
+	/**
+	 * @param deflate <code>true</code> to compress the entries, <code>false</code> to store them as they are
+	 */
+	public ZipSink(@NotNull File archive, boolean deflate) throws IOException {
+		super(archive);
+		this.deflate = deflate;
+		final Map<String, Integer> previous = readManifest();
+		final File partial = new File(archive.getPath() + ".partial");
+		if (archive.exists()) {
+			Files.move(archive.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), 64 * 1024));
+		final Map<String, Integer> kept = new LinkedHashMap<>();
+		try {
+			if (partial.exists()) {
+				copyEntries(partial, previous, kept);
+				Files.delete(partial.toPath());
+			}
+			startManifest(kept);
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies the entries of the manifest from the previous archive, stopping at the first one that is missing or truncated
+	 */
+	private void copyEntries(@NotNull File partial, @NotNull Map<String, Integer> previous, @NotNull Map<String, Integer> kept) throws IOException {
+		try (final ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(partial)))) {
+			final byte[] buffer = new byte[64 * 1024];
+			while (true) {
+				final String name;
+				final byte[] bytes;
+				try {
+					final ZipEntry entry = in.getNextEntry();
+					if (entry == null) {
+						break;
+					}
+					name = entry.getName();
+					final ByteArrayOutputStream read = new ByteArrayOutputStream();
+					int count;
+					while ((count = in.read(buffer)) >= 0) {
+						read.write(buffer, 0, count);
+					}
+					bytes = read.toByteArray();
+				} catch (IOException e) {
+					//The entry that was being written when the previous run stopped
+					OutUtils.verbose("End of the resumed archive: " + e.getMessage());
+					break;
+				}
+				final Integer size = previous.get(name);
+				if (size == null || size != bytes.length || kept.containsKey(name)) {
+					break;
+				}
+				writeEntry(name, bytes);
+				kept.put(name, size);
+			}
+		}
+		if (kept.size() < previous.size()) {
+			OutUtils.warn((previous.size() - kept.size()) + " entries of the manifest were not found in " + archive + ", they will be written again");
+		}
+	}
+
+	@Override
+	protected void writeEntry(@NotNull String path, @NotNull byte[] bytes) throws IOException {
+		final ZipEntry entry = new ZipEntry(path);
+		if (!deflate) {
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(bytes.length);
+			entry.setCompressedSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+		out.flush();
+	}
+
+	@Override
+	protected void finish() throws IOException {
+		out.close();
+	}
+}
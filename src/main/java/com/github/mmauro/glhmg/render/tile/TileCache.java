@@ -0,0 +1,66 @@
+package com.github.mmauro.glhmg.render.tile;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of decoded tiles, bounded by the number of bytes of the decoded pixels
+ */
+public class TileCache {
+
+	private final long maxBytes;
+	private long bytes = 0;
+	@NotNull
+	private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param maxBytes the maximum number of bytes of decoded pixels kept in memory
+	 */
+	public TileCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes < 0");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	@Contract(pure = true)
+	private static long getBytes(@NotNull BufferedImage image) {
+		return (long) image.getWidth() * image.getHeight() * 4;
+	}
+
+	@Nullable
+	public synchronized BufferedImage get(@NotNull TileKey key) {
+		return tiles.get(key);
+	}
+
+	/**
+	 * Adds a tile, evicting the least recently used ones if the budget is exceeded
+	 */
+	public synchronized void put(@NotNull TileKey key, @NotNull BufferedImage tile) {
+		final BufferedImage old = tiles.put(key, tile);
+		if (old != null) {
+			bytes -= getBytes(old);
+		}
+		bytes += getBytes(tile);
+
+		final Iterator<Map.Entry<TileKey, BufferedImage>> iterator = tiles.entrySet().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			final Map.Entry<TileKey, BufferedImage> eldest = iterator.next();
+			bytes -= getBytes(eldest.getValue());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * @return the number of bytes currently used
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.mmauro.glhmg.render.tile;
+
+import com.github.mmauro.glhmg.render.Viewport;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Composes the background of a frame blitting only the tiles that intersect its viewport
+ */
+public class TileCompositor {
+
+	@NotNull
+	private final TileStore tileStore;
+
+	public TileCompositor(@NotNull TileStore tileStore) {
+		this.tileStore = tileStore;
+	}
+
+	/**
+	 * Draws the tiles intersecting the viewport. The graphics must be already scaled, and its origin is the top left corner of the viewport
+	 *
+	 * @throws IOException if a tile cannot be obtained
+	 */
+	public void compose(@NotNull Viewport viewport, @NotNull Graphics2D graphics) throws IOException {
+		final int tileSize = TileKey.TILE_SIZE;
+		final long firstX = Math.floorDiv(viewport.getLeft(), tileSize);
+		final long lastX = Math.floorDiv(viewport.getLeft() + viewport.getWidth() - 1, tileSize);
+		final long firstY = Math.floorDiv(viewport.getTop(), tileSize);
+		final long lastY = Math.floorDiv(viewport.getTop() + viewport.getHeight() - 1, tileSize);
+
+		for (long y = firstY; y <= lastY; y++) {
+			for (long x = firstX; x <= lastX; x++) {
+				final BufferedImage tile = tileStore.get(new TileKey(viewport.getZoom(), (int) x, (int) y));
+				if (tile != null) {
+					graphics.drawImage(tile, (int) (x * tileSize - viewport.getLeft()), (int) (y * tileSize - viewport.getTop()), tileSize, tileSize, null);
+				}
+			}
+		}
+	}
+}
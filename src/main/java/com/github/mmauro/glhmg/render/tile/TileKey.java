@@ -0,0 +1,101 @@
+package com.github.mmauro.glhmg.render.tile;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The coordinates of a slippy map tile
+ */
+public final class TileKey {
+
+	/**
+	 * The size, in pixels, of a tile side
+	 */
+	public static final int TILE_SIZE = 256;
+
+	private final int zoom, x, y;
+
+	public TileKey(int zoom, int x, int y) {
+		if (zoom < 0 || zoom > 30) {
+			throw new IllegalArgumentException("Invalid zoom: " + zoom);
+		}
+		this.zoom = zoom;
+		this.x = x;
+		this.y = y;
+	}
+
+	@Contract(pure = true)
+	public int getZoom() {
+		return zoom;
+	}
+
+	@Contract(pure = true)
+	public int getX() {
+		return x;
+	}
+
+	@Contract(pure = true)
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return the number of tiles per side at the zoom of this tile
+	 */
+	@Contract(pure = true)
+	public int getTilesPerSide() {
+		return 1 << zoom;
+	}
+
+	/**
+	 * @return <code>true</code> if this tile exists in the world (x and y between 0 and {@link #getTilesPerSide()})
+	 */
+	@Contract(pure = true)
+	public boolean isValid() {
+		return x >= 0 && y >= 0 && x < getTilesPerSide() && y < getTilesPerSide();
+	}
+
+	/**
+	 * @return a new key with the x coordinate wrapped around the antimeridian
+	 */
+	@NotNull
+	@Contract(pure = true)
+	public TileKey wrap() {
+		final int wrappedX = Math.floorMod(x, getTilesPerSide());
+		return wrappedX == x ? this : new TileKey(zoom, wrappedX, y);
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	public String format(@NotNull String template) {
+		return template
+				.replace("{z}", String.valueOf(zoom))
+				.replace("{x}", String.valueOf(x))
+				.replace("{y}", String.valueOf(y));
+	}
+
+	@Contract(pure = true)
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		} else if (!(o instanceof TileKey)) {
+			return false;
+		}
+		final TileKey tileKey = (TileKey) o;
+		return zoom == tileKey.zoom && x == tileKey.x && y == tileKey.y;
+	}
+
+	@Contract(pure = true)
+	@Override
+	public int hashCode() {
+		return (31 * zoom + x) * 31 + y;
+	}
+
+	@NotNull
+	@Contract(pure = true)
+	@Override
+	public String toString() {
+		return zoom + "/" + x + "/" + y;
+	}
+}
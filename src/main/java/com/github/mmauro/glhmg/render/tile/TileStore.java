@@ -0,0 +1,162 @@
+package com.github.mmauro.glhmg.render.tile;
+
+import com.github.mmauro.glhmg.OutUtils;
+import com.github.mmauro.glhmg.Utils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides decoded tiles, looking for them in the {@link TileCache}, then in the disk cache and at last downloading them.
+ * Each tile is downloaded and decoded only once, even when requested concurrently.
+ */
+public class TileStore {
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 10000, READ_TIMEOUT_MILLIS = 30000;
+
+	@NotNull
+	private final String urlTemplate;
+	@Nullable
+	private final File cacheDir;
+	@NotNull
+	private final TileCache memoryCache;
+	@NotNull
+	private final ConcurrentHashMap<TileKey, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<>();
+	@NotNull
+	private final AtomicLong decoded = new AtomicLong(), downloaded = new AtomicLong();
+
+	/**
+	 * @param urlTemplate the URL of the tiles, with the <code>{z}</code>, <code>{x}</code> and <code>{y}</code> placeholders
+	 * @param cacheDir    the directory where the downloaded tiles are kept as <code>z/x/y</code> files, or <code>null</code> to not cache them on disk
+	 * @param memoryCache the cache of the decoded tiles
+	 */
+	public TileStore(@NotNull String urlTemplate, @Nullable File cacheDir, @NotNull TileCache memoryCache) {
+		this.urlTemplate = urlTemplate;
+		this.cacheDir = cacheDir;
+		this.memoryCache = memoryCache;
+	}
+
+	/**
+	 * @return the decoded tile, or <code>null</code> if the tile is outside of the world
+	 * @throws IOException if the tile cannot be obtained
+	 */
+	@Nullable
+	public BufferedImage get(@NotNull TileKey key) throws IOException {
+		final TileKey wrapped = key.wrap();
+		if (!wrapped.isValid()) {
+			return null;
+		}
+		final BufferedImage cached = memoryCache.get(wrapped);
+		if (cached != null) {
+			return cached;
+		}
+
+		final CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+		final CompletableFuture<BufferedImage> existing = loading.putIfAbsent(wrapped, future);
+		if (existing != null) {
+			return await(existing);
+		}
+		try {
+			final BufferedImage tile = load(wrapped);
+			memoryCache.put(wrapped, tile);
+			future.complete(tile);
+			return tile;
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(wrapped);
+		}
+	}
+
+	@NotNull
+	private static BufferedImage await(@NotNull CompletableFuture<BufferedImage> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for tile", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	@NotNull
+	private BufferedImage load(@NotNull TileKey key) throws IOException {
+		final File cacheFile = cacheDir == null ? null : new File(cacheDir, key.toString());
+		final byte[] bytes;
+		if (cacheFile != null && cacheFile.isFile()) {
+			bytes = Files.readAllBytes(cacheFile.toPath());
+		} else {
+			bytes = download(key);
+			if (cacheFile != null) {
+				final File parent = cacheFile.getParentFile();
+				if (!parent.isDirectory() && !parent.mkdirs()) {
+					throw new IOException("Unable to create directory " + parent);
+				}
+				//Writes to a temporary file first, so that an interrupted run doesn't leave broken tiles
+				final File temp = new File(parent, cacheFile.getName() + ".part");
+				Files.write(temp.toPath(), bytes);
+				Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+		if (image == null) {
+			throw new IOException("Unable to decode tile " + key);
+		}
+		decoded.incrementAndGet();
+		return image;
+	}
+
+	@NotNull
+	private byte[] download(@NotNull TileKey key) throws IOException {
+		final String url = key.format(urlTemplate);
+		OutUtils.verbose(url);
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		//Tile servers usually require a valid user agent
+		connection.setRequestProperty("User-Agent", "glhmg");
+		//Without timeouts a stalled server would block the download, and whoever waits for the same tile, forever
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		final byte[] bytes;
+		try {
+			if (connection.getResponseCode() != 200) {
+				throw new IOException("Error downloading tile " + key + ": " + connection.getResponseMessage());
+			}
+			bytes = Utils.readFully(connection.getInputStream());
+		} catch (IOException e) {
+			//The connection isn't kept alive after an error or a timeout
+			connection.disconnect();
+			throw e;
+		}
+		downloaded.incrementAndGet();
+		return bytes;
+	}
+
+	/**
+	 * @return the number of tiles decoded so far
+	 */
+	public long getDecodedCount() {
+		return decoded.get();
+	}
+
+	/**
+	 * @return the number of tiles downloaded so far
+	 */
+	public long getDownloadedCount() {
+		return downloaded.get();
+	}
+}
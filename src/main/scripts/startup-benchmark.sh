@@ -0,0 +1,36 @@
+#!/bin/sh
+# Measures the cold start of glhmg, with and without the class-data sharing archive.
+# Usage: startup-benchmark.sh [runs] [glhmg arguments...]
+# Without arguments the help is printed, which exercises the option parsing only; pass the arguments of a small
+# export to measure a whole run.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+RUNS=${1:-10}
+[ $# -gt 0 ] && shift
+[ $# -eq 0 ] && set -- --help
+
+now_ms() {
+	echo $(($(date +%s%N) / 1000000))
+}
+
+# Prints the average wall clock time, in milliseconds, of RUNS launches with the given JVM options
+measure() {
+	total=0
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		start=$(now_ms)
+		"$JAVA" "$@" >/dev/null 2>&1
+		total=$((total + $(now_ms) - start))
+		i=$((i + 1))
+	done
+	echo $((total / RUNS))
+}
+
+echo "Runs: $RUNS"
+echo "Without archive: $(measure -Xshare:auto -jar "$DIR/glhmg.jar" "$@") ms"
+if [ -f "$DIR/glhmg.jsa" ]; then
+	echo "With archive:    $(measure -XX:SharedArchiveFile="$DIR/glhmg.jsa" -Xshare:auto -jar "$DIR/glhmg.jar" "$@") ms"
+else
+	echo "With archive:    no glhmg.jsa next to glhmg.jar, build with a JDK 13 or newer"
+fi